@@ -0,0 +1,322 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import de.codereddev.howtoandroidsoundboard.DatabaseSchema.MainTable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmarks of the DatabaseHandler against large synthetic catalogs.
+ * The timings are written into the log with the tag of this class.
+ * The shipped sound collection is restored after every benchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseBenchmarkTest {
+
+    private static final String LOG_TAG = DatabaseBenchmarkTest.class.getSimpleName();
+
+    // Synthetic sounds use resource ids far away from the real ones
+    private static final int SYNTHETIC_ID_OFFSET = 0x40000000;
+
+    // Synthetic sounds use names that can not collide with the users favorites
+    private static final String SYNTHETIC_NAME_PREFIX = "Benchmark ";
+
+    // Words to build synthetic sound names that can be searched for
+    private static final String[] SYNTHETIC_WORDS = {"air", "horn", "drum", "roll", "laugh", "applause",
+                                                     "bell", "whistle", "boom", "clap", "siren", "cat",
+                                                     "dog", "bird", "rain", "thunder"};
+
+    // Number of times each search query is repeated
+    private static final int SEARCH_RUNS = 20;
+
+    private Context context;
+    private DatabaseHandler databaseHandler;
+
+    @Before
+    public void setUp() {
+
+        context = InstrumentationRegistry.getTargetContext();
+        databaseHandler = DatabaseHandler.getInstance(context);
+        DatabaseTestHelper.recreateMainTable(databaseHandler);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseTestHelper.restoreMainTable(databaseHandler);
+    }
+
+    @Test
+    public void insertIntoMain_10k() {
+        benchmarkBulkInsert(10000);
+    }
+
+    @Test
+    public void insertIntoMain_100k() {
+        benchmarkBulkInsert(100000);
+    }
+
+    @Test
+    public void insertPerRow_10k() {
+
+        List<SoundObject> soundObjects = createSyntheticSounds(10000);
+        SQLiteDatabase database = databaseHandler.getWritableDatabase();
+
+        // This is how the catalog was filled before: one auto-committed insert per sound
+        long start = SystemClock.elapsedRealtime();
+
+        for (SoundObject soundObject : soundObjects) {
+
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(MainTable.NAME, soundObject.getItemName());
+            contentValues.put(MainTable.RESOURCE_ID, soundObject.getItemId());
+
+            database.insertOrThrow(MainTable.TABLE_NAME, null, contentValues);
+        }
+
+        long duration = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+        Log.i(LOG_TAG, "Per row insert of " + soundObjects.size() + " sounds took " + duration
+                + " ms (" + soundObjects.size() * 1000L / duration + " rows/s)");
+    }
+
+    @Test
+    public void search_50k() {
+
+        int count = 50000;
+        List<SoundObject> soundObjects = createSearchableSounds(count);
+        databaseHandler.insertIntoMain(soundObjects);
+
+        SQLiteDatabase database = databaseHandler.getReadableDatabase();
+
+        // The synthetic names are built from whole words, so the expected matches can be counted here
+        int expectedMatches = 0;
+
+        for (SoundObject soundObject : soundObjects) {
+
+            for (String word : soundObject.getItemName().toLowerCase(Locale.ROOT).split(" ")) {
+
+                if (word.startsWith("dru")) {
+                    expectedMatches++;
+                    break;
+                }
+            }
+        }
+
+        // The LIKE prefix search only finds sounds whose name begins with the query
+        int prefixMatches = 0;
+        long start = SystemClock.elapsedRealtime();
+
+        for (int i = 0; i < SEARCH_RUNS; i++) {
+            prefixMatches = databaseHandler.getSoundCollectionFromPrefixQuery(SYNTHETIC_NAME_PREFIX + "dru").size();
+        }
+
+        long prefixDuration = SystemClock.elapsedRealtime() - start;
+
+        // Finding a word anywhere in the name with LIKE needs a scan of the whole table
+        int containsMatches = 0;
+        start = SystemClock.elapsedRealtime();
+
+        for (int i = 0; i < SEARCH_RUNS; i++) {
+
+            Cursor cursor = database.query(MainTable.TABLE_NAME,
+                                           new String[]{MainTable.NAME, MainTable.RESOURCE_ID, MainTable.SOUND_KEY},
+                                           MainTable.NAME + " LIKE ?", new String[]{"% dru%"},
+                                           null, null, MainTable.NAME);
+            containsMatches = cursor.getCount();
+            cursor.close();
+        }
+
+        long containsDuration = SystemClock.elapsedRealtime() - start;
+
+        // The full text search finds the word anywhere in the name and ranks the results
+        List<SoundObject> searchResults = null;
+        start = SystemClock.elapsedRealtime();
+
+        for (int i = 0; i < SEARCH_RUNS; i++) {
+            searchResults = databaseHandler.getSoundCollectionFromQuery("dru");
+        }
+
+        long searchDuration = SystemClock.elapsedRealtime() - start;
+
+        // Only the synthetic sounds are checked, their match set does not depend on other data
+        int searchMatches = 0;
+
+        for (SoundObject soundObject : searchResults) {
+
+            if (soundObject.getItemName().startsWith(SYNTHETIC_NAME_PREFIX)) {
+                searchMatches++;
+            }
+        }
+
+        Log.i(LOG_TAG, "Searching " + count + " sounds took " + prefixDuration / SEARCH_RUNS
+                + " ms with LIKE 'query%' (" + prefixMatches + " matches), " + containsDuration / SEARCH_RUNS
+                + " ms with LIKE '% query%' (" + containsMatches + " matches) and " + searchDuration / SEARCH_RUNS
+                + " ms with full text search (" + searchMatches + " matches)");
+
+        // The LIKE count is only logged, it does not split the names into words like the full text search
+        assertTrue(prefixMatches > 0);
+        assertEquals(expectedMatches, searchMatches);
+        assertTrue(searchMatches > prefixMatches);
+    }
+
+    @Test
+    public void pagedCatalog_50k() {
+
+        int count = 50000;
+        databaseHandler.insertIntoMain(createSyntheticSounds(count));
+
+        PagedSoundList.Source source = databaseHandler.getCatalogSource();
+        int pageSize = PagedSoundList.PAGE_SIZE;
+
+        // Read the whole catalog page by page like scrolling to the end does
+        List<SoundObject> pagedSounds = new ArrayList<>(count);
+        PagedSoundList.Page page = source.loadAt(0, pageSize);
+        PagedSoundList.Page lastPage = page;
+
+        long start = SystemClock.elapsedRealtime();
+
+        while (page.size() > 0) {
+
+            for (int i = 0; i < page.size(); i++) {
+                pagedSounds.add(page.getSounds().get(i));
+            }
+
+            lastPage = page;
+            page = source.loadAfter(lastPage.getLastName(), lastPage.getLastRowId(), pageSize);
+        }
+
+        long keysetDuration = SystemClock.elapsedRealtime() - start;
+
+        // Reading the same pages by offset steps over all rows before each page
+        start = SystemClock.elapsedRealtime();
+
+        for (int offset = 0; offset < count; offset += pageSize) {
+            source.loadAt(offset, pageSize);
+        }
+
+        long offsetDuration = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "Paging through " + count + " sounds took " + keysetDuration + " ms by keyset and "
+                + offsetDuration + " ms by offset");
+
+        List<SoundObject> soundCollection = databaseHandler.getSoundCollection();
+
+        assertEquals(count, source.count());
+        assertEquals(soundCollection.size(), pagedSounds.size());
+
+        for (int i = 0; i < soundCollection.size(); i++) {
+            assertEquals(soundCollection.get(i).getItemKey(), pagedSounds.get(i).getItemKey());
+        }
+
+        // Reading backwards from the last page returns the page before it
+        PagedSoundList.Page previousPage = source.loadBefore(lastPage.getFirstName(), lastPage.getFirstRowId(),
+                                                             pageSize);
+        int previousStart = (count - 1) / pageSize * pageSize - pageSize;
+
+        assertEquals(pageSize, previousPage.size());
+        assertEquals(soundCollection.get(previousStart).getItemKey(),
+                     previousPage.getSounds().get(0).getItemKey());
+    }
+
+    @Test
+    public void fuzzySearch_50k() {
+
+        int count = 50000;
+        databaseHandler.insertIntoMain(createSearchableSounds(count));
+
+        // Misspelled queries, each one should still find the sounds of the intended words
+        String[] queries = {"thuner", "whistel", "applaus bel", "sirne"};
+        String[] expectedWords = {"thunder", "whistle", "applause", "siren"};
+
+        for (int q = 0; q < queries.length; q++) {
+
+            List<SoundObject> results = null;
+            long start = SystemClock.elapsedRealtime();
+
+            for (int i = 0; i < SEARCH_RUNS; i++) {
+                results = databaseHandler.getSoundCollectionFromFuzzyQuery(queries[q]);
+            }
+
+            long duration = SystemClock.elapsedRealtime() - start;
+
+            Log.i(LOG_TAG, "Fuzzy search for '" + queries[q] + "' in " + count + " sounds took "
+                    + duration / SEARCH_RUNS + " ms (" + results.size() + " matches)");
+
+            assertFalse(results.isEmpty());
+            assertTrue(results.get(0).getItemName().contains(expectedWords[q]));
+        }
+    }
+
+    /**
+     * Creates a catalog of sounds whose names consist of two words of SYNTHETIC_WORDS.
+     *
+     * @param count Number of sounds.
+     * @return The synthetic sounds.
+     */
+    private static List<SoundObject> createSearchableSounds(int count) {
+
+        List<SoundObject> soundObjects = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            String name = String.format(Locale.ROOT, SYNTHETIC_NAME_PREFIX + "%s %s %06d",
+                                        SYNTHETIC_WORDS[i % SYNTHETIC_WORDS.length],
+                                        SYNTHETIC_WORDS[(i / SYNTHETIC_WORDS.length) % SYNTHETIC_WORDS.length], i);
+
+            soundObjects.add(new SoundObject(name, SYNTHETIC_ID_OFFSET + i,
+                                             String.format(Locale.ROOT, "benchmark_%06d", i)));
+        }
+
+        return soundObjects;
+    }
+
+    private void benchmarkBulkInsert(int count) {
+
+        List<SoundObject> soundObjects = createSyntheticSounds(count);
+
+        long start = SystemClock.elapsedRealtime();
+        int inserted = databaseHandler.insertIntoMain(soundObjects);
+        long duration = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "Bulk insert of " + count + " sounds took " + duration + " ms ("
+                + databaseHandler.getLastInsertRowsPerSecond() + " rows/s)");
+
+        assertEquals(count, inserted);
+    }
+
+    /**
+     * Creates a catalog of sounds with unique names, resource ids and sound keys.
+     *
+     * @param count Number of sounds.
+     * @return The synthetic sounds.
+     */
+    static List<SoundObject> createSyntheticSounds(int count) {
+
+        List<SoundObject> soundObjects = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            soundObjects.add(new SoundObject(String.format(Locale.ROOT, SYNTHETIC_NAME_PREFIX + "%06d", i),
+                                             SYNTHETIC_ID_OFFSET + i,
+                                             String.format(Locale.ROOT, "benchmark_%06d", i)));
+        }
+
+        return soundObjects;
+    }
+}
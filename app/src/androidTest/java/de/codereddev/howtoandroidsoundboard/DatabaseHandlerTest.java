@@ -0,0 +1,96 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test that checks the DatabaseHandler Singleton under concurrent access.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHandlerTest {
+
+    private static final int THREAD_COUNT = 16;
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void getInstance_sharesOneHelperAndConnectionPoolAcrossThreads() throws Exception {
+
+        final Context context = InstrumentationRegistry.getTargetContext();
+
+        final Set<DatabaseHandler> handlers =
+            Collections.synchronizedSet(Collections.newSetFromMap(
+                new IdentityHashMap<DatabaseHandler, Boolean>()));
+        final Set<SQLiteDatabase> databases =
+            Collections.synchronizedSet(Collections.newSetFromMap(
+                new IdentityHashMap<SQLiteDatabase, Boolean>()));
+
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final SoundObject soundObject = new SoundObject("DatabaseHandlerTest", Integer.MAX_VALUE,
+                                                        "database_handler_test");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+
+            final boolean writer = i % 4 == 0;
+
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+
+                    // Let all threads hit getInstance() at the same time
+                    startSignal.await();
+
+                    for (int j = 0; j < ITERATIONS; j++) {
+
+                        DatabaseHandler handler = DatabaseHandler.getInstance(context);
+                        handlers.add(handler);
+
+                        if (writer) {
+                            databases.add(handler.getWritableDatabase());
+                            handler.addFavorite(soundObject);
+                            handler.removeFavorite(soundObject);
+                        } else {
+                            databases.add(handler.getReadableDatabase());
+                            handler.getFavorites();
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        startSignal.countDown();
+
+        // Rethrows any exception of a worker thread
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+
+        assertEquals(1, handlers.size());
+        assertEquals(1, databases.size());
+        assertTrue(databases.iterator().next().isWriteAheadLoggingEnabled());
+    }
+}
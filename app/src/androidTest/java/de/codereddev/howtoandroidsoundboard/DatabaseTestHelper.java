@@ -0,0 +1,38 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Resets the MAIN table of the DatabaseHandler for instrumented tests.
+ * Uses the upgrade path of the app, so the tests do not need any methods of their own in the DatabaseHandler.
+ */
+final class DatabaseTestHelper {
+
+    private DatabaseTestHelper() {
+    }
+
+    /**
+     * Drops the MAIN table and the tables that mirror it and creates them empty.
+     * The hash of the synced catalog is cleared as well, so the next sync inserts every shipped sound.
+     *
+     * @param databaseHandler DatabaseHandler to reset.
+     */
+    static void recreateMainTable(DatabaseHandler databaseHandler) {
+
+        SQLiteDatabase database = databaseHandler.getWritableDatabase();
+
+        // An upgrade to the same version only recreates the MAIN table, the favorites are kept
+        databaseHandler.onUpgrade(database, database.getVersion(), database.getVersion());
+    }
+
+    /**
+     * Replaces the MAIN table with the shipped catalog.
+     *
+     * @param databaseHandler DatabaseHandler to reset.
+     */
+    static void restoreMainTable(DatabaseHandler databaseHandler) {
+
+        recreateMainTable(databaseHandler);
+        databaseHandler.syncSoundCollection();
+    }
+}
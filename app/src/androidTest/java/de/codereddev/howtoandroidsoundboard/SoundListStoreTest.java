@@ -0,0 +1,162 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the caching, the version check and the pushed updates of the SoundListStore.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SoundListStoreTest {
+
+    // Define the time to wait for a list to be loaded
+    private static final long LOAD_TIMEOUT_MS = 5000;
+
+    private Instrumentation instrumentation;
+    private DatabaseHandler databaseHandler;
+    private SoundRepository soundRepository;
+    private SoundListStore soundListStore;
+
+    // Sorts before every real sound name
+    private final SoundObject soundObject = new SoundObject("  SoundListStoreTest", Integer.MAX_VALUE - 1,
+                                                            "sound_list_store_test");
+
+    private final List<PagedSoundList> deliveredLists = new ArrayList<>();
+    private CountDownLatch deliveries;
+
+    private final SoundListStore.Subscriber subscriber = new SoundListStore.Subscriber() {
+        @Override
+        public void onSoundListChanged(PagedSoundList list) {
+
+            deliveredLists.add(list);
+            deliveries.countDown();
+        }
+    };
+
+    @Before
+    public void setUp() {
+
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = InstrumentationRegistry.getTargetContext();
+
+        databaseHandler = DatabaseHandler.getInstance(context);
+        soundRepository = SoundRepository.getInstance(context);
+        soundListStore = SoundListStore.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                soundListStore.unsubscribe(SoundListStore.CATALOG, subscriber);
+                soundListStore.unsubscribe(SoundListStore.FAVORITES, subscriber);
+                soundListStore.clear(SoundListStore.FAVORITES);
+
+                soundRepository.removeFavorite(soundObject);
+                soundRepository.flush();
+            }
+        });
+    }
+
+    @Test
+    public void resubscribe_deliversCachedListUntilVersionChanges() throws InterruptedException {
+
+        // The first subscription loads the list in the background
+        subscribeAndAwait(SoundListStore.FAVORITES);
+
+        final int loads = soundListStore.getLoadCount();
+        final PagedSoundList firstList = deliveredLists.get(0);
+
+        // A recreated activity subscribes again and receives the same list without a load
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                soundListStore.unsubscribe(SoundListStore.FAVORITES, subscriber);
+            }
+        });
+
+        subscribeAndAwait(SoundListStore.FAVORITES);
+
+        assertSame(firstList, deliveredLists.get(1));
+        assertEquals(loads, soundListStore.getLoadCount());
+
+        // A changed favorite makes the cached list outdated
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                soundRepository.addFavorite(soundObject);
+                soundListStore.unsubscribe(SoundListStore.FAVORITES, subscriber);
+            }
+        });
+
+        subscribeAndAwait(SoundListStore.FAVORITES);
+
+        PagedSoundList reloadedList = deliveredLists.get(2);
+
+        assertNotSame(firstList, reloadedList);
+        assertEquals(loads + 1, soundListStore.getLoadCount());
+        assertEquals(firstList.size() + 1, reloadedList.size());
+    }
+
+    @Test
+    public void catalogSync_pushesNewCatalogToSubscribers() throws InterruptedException {
+
+        subscribeAndAwait(SoundListStore.CATALOG);
+
+        final int loads = soundListStore.getLoadCount();
+        final PagedSoundList firstList = deliveredLists.get(0);
+        final int firstSize = firstList.size();
+
+        // An empty main table makes the sync insert every shipped sound again, so the catalog changes
+        deliveries = new CountDownLatch(1);
+
+        DatabaseTestHelper.recreateMainTable(databaseHandler);
+        soundRepository.syncCatalog();
+
+        // The subscriber neither subscribes again nor asks for a refresh
+        assertTrue(deliveries.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        PagedSoundList pushedList = deliveredLists.get(1);
+
+        assertNotSame(firstList, pushedList);
+        assertEquals(loads + 1, soundListStore.getLoadCount());
+        assertEquals(firstSize, pushedList.size());
+    }
+
+    /**
+     * Subscribes to a list and waits until it has been delivered.
+     *
+     * @param listId CATALOG or FAVORITES.
+     */
+    private void subscribeAndAwait(final int listId) throws InterruptedException {
+
+        deliveries = new CountDownLatch(1);
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                soundListStore.subscribe(listId, subscriber);
+            }
+        });
+
+        assertTrue(deliveries.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,208 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.codereddev.howtoandroidsoundboard.DatabaseSchema.FavoritesTable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the snapshots and change notifications of the SoundRepository.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SoundRepositoryTest {
+
+    // Define the time to wait for the background writes
+    private static final long PERSIST_TIMEOUT_MS = 5000;
+
+    private Instrumentation instrumentation;
+    private Context context;
+    private SoundRepository soundRepository;
+
+    // Sorts before every real sound name
+    private final SoundObject soundObject = new SoundObject("  SoundRepositoryTest", Integer.MAX_VALUE,
+                                                            "sound_repository_test");
+
+    private final List<String> events = new ArrayList<>();
+
+    private final SoundRepository.Observer observer = new SoundRepository.Observer() {
+        @Override
+        public void onFavoriteAdded(SoundObject soundObject, int position) {
+            events.add("added " + soundObject.getItemKey() + " at " + position);
+        }
+
+        @Override
+        public void onFavoriteRemoved(SoundObject soundObject, int position) {
+            events.add("removed " + soundObject.getItemKey() + " at " + position);
+        }
+
+        @Override
+        public void onCatalogChanged() {
+            events.add("catalog changed");
+        }
+
+        @Override
+        public void onFavoritesLoaded() {
+            // The favorites might have been loaded by an earlier test
+        }
+    };
+
+    @Before
+    public void setUp() {
+
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        context = InstrumentationRegistry.getTargetContext();
+        soundRepository = SoundRepository.getInstance(context);
+
+        soundRepository.addObserver(observer);
+    }
+
+    @After
+    public void tearDown() {
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                soundRepository.removeFavorite(soundObject);
+                soundRepository.flush();
+            }
+        });
+
+        awaitPersisted(false);
+
+        soundRepository.removeObserver(observer);
+    }
+
+    @Test
+    public void addAndRemoveFavorite_notifiesDeltasAndPersists() {
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                soundRepository.addFavorite(soundObject);
+
+                // Adding a favorite twice changes nothing
+                soundRepository.addFavorite(soundObject);
+            }
+        });
+
+        assertTrue(soundRepository.isFavorite(soundObject));
+        assertEquals(soundObject.getItemKey(), soundRepository.getFavorites().get(0).getItemKey());
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                // The id set the grid reads while binding is updated together with the snapshot
+                assertTrue(soundRepository.isFavorite(soundObject.getItemId()));
+            }
+        });
+        assertTrue(awaitPersisted(true));
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                soundRepository.removeFavorite(soundObject);
+            }
+        });
+
+        assertFalse(soundRepository.isFavorite(soundObject));
+        assertTrue(awaitPersisted(false));
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                assertFalse(soundRepository.isFavorite(soundObject.getItemId()));
+            }
+        });
+
+        List<String> expectedEvents = new ArrayList<>();
+        expectedEvents.add("added sound_repository_test at 0");
+        expectedEvents.add("removed sound_repository_test at 0");
+
+        assertEquals(expectedEvents, events);
+    }
+
+    @Test
+    public void repeatedToggles_areMergedIntoOneBatch() {
+
+        final int flushedBatches = soundRepository.getFlushedBatchCount();
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                // Write everything else first, so only the toggles of the test sound are queued
+                soundRepository.flush();
+
+                soundRepository.addFavorite(soundObject);
+                soundRepository.removeFavorite(soundObject);
+                soundRepository.addFavorite(soundObject);
+
+                assertEquals(1, soundRepository.getPendingWriteCount());
+
+                soundRepository.flush();
+            }
+        });
+
+        assertEquals(0, soundRepository.getPendingWriteCount());
+        assertTrue(soundRepository.getFlushedBatchCount() - flushedBatches <= 2);
+        assertTrue(awaitPersisted(true));
+
+        // Toggling back and forth before the flush writes nothing at all
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                soundRepository.removeFavorite(soundObject);
+                soundRepository.addFavorite(soundObject);
+
+                assertEquals(0, soundRepository.getPendingWriteCount());
+            }
+        });
+
+        assertTrue(soundRepository.isFavorite(soundObject));
+    }
+
+    /**
+     * Waits until the FAVORITES table contains the test sound or not.
+     *
+     * @param favorite True to wait for the sound to be a favorite.
+     * @return True if the table reached the state before the timeout.
+     */
+    private boolean awaitPersisted(boolean favorite) {
+
+        long deadline = SystemClock.elapsedRealtime() + PERSIST_TIMEOUT_MS;
+
+        while (SystemClock.elapsedRealtime() < deadline) {
+
+            // The test sound has no resource, so it is looked up in the table instead of with getFavorites()
+            long rows = DatabaseUtils.queryNumEntries(DatabaseHandler.getInstance(context).getReadableDatabase(),
+                                                      FavoritesTable.TABLE_NAME, FavoritesTable.SOUND_KEY + " = ?",
+                                                      new String[]{soundObject.getItemKey()});
+
+            if ((rows != 0) == favorite) {
+                return true;
+            }
+
+            SystemClock.sleep(20);
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,270 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the list updates of the SoundboardRecyclerAdapter.
+ * The RecyclerView is measured and laid out by hand, so no activity is needed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SoundboardRecyclerAdapterTest {
+
+    private static final String LOG_TAG = SoundboardRecyclerAdapterTest.class.getSimpleName();
+
+    // Define the size of the list that is filtered
+    private static final int SOUND_COUNT = 10000;
+
+    // Define the number of allocations that binding all sounds may cause beyond setting their names
+    private static final int MAX_BIND_ALLOCATIONS = SOUND_COUNT / 100;
+
+    // Define the size of the RecyclerView in pixels
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private Instrumentation instrumentation;
+
+    private RecyclerView recyclerView;
+    private SoundboardRecyclerAdapter adapter;
+
+    @Before
+    public void setUp() {
+
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        final Context context = InstrumentationRegistry.getTargetContext();
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new GridLayoutManager(context, 3));
+
+                // Animations would bind items on their own schedule
+                recyclerView.setItemAnimator(null);
+
+                adapter = new SoundboardRecyclerAdapter(context, new ArrayList<SoundObject>());
+                recyclerView.setAdapter(adapter);
+            }
+        });
+    }
+
+    @Test
+    public void swapData_filterRebindsFewerItems() throws InterruptedException {
+
+        List<SoundObject> soundObjects = DatabaseBenchmarkTest.createSyntheticSounds(SOUND_COUNT);
+
+        // Filtering removes every third sound, most visible sounds stay but move
+        ArrayList<SoundObject> filteredSounds = new ArrayList<>();
+
+        for (int i = 0; i < soundObjects.size(); i++) {
+
+            if (i % 3 != 0) {
+                filteredSounds.add(soundObjects.get(i));
+            }
+        }
+
+        swapAndLayout(new ArrayList<>(soundObjects));
+
+        // Filter with fine-grained notifications
+        long start = adapter.getBindCount();
+        swapAndLayout(filteredSounds);
+        long diffBinds = adapter.getBindCount() - start;
+
+        // Filter like before by rebinding every visible item
+        start = adapter.getBindCount();
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                adapter.notifyDataSetChanged();
+                layout();
+            }
+        });
+
+        long fullBinds = adapter.getBindCount() - start;
+
+        Log.i(LOG_TAG, "Filtering " + SOUND_COUNT + " sounds to " + filteredSounds.size() + " caused "
+                + diffBinds + " bind calls instead of " + fullBinds);
+
+        assertEquals(filteredSounds.size(), adapter.getItemCount());
+        assertTrue(diffBinds < fullBinds);
+    }
+
+    @Test
+    public void swapData_discardsStaleDiff() throws InterruptedException {
+
+        List<SoundObject> soundObjects = DatabaseBenchmarkTest.createSyntheticSounds(SOUND_COUNT);
+
+        swapAndLayout(new ArrayList<>(soundObjects));
+
+        final ArrayList<SoundObject> staleSounds = new ArrayList<>(soundObjects.subList(0, SOUND_COUNT / 2));
+        final ArrayList<SoundObject> latestSounds = new ArrayList<>(soundObjects.subList(0, SOUND_COUNT / 4));
+
+        final CountDownLatch committed = new CountDownLatch(1);
+        final boolean[] staleCommitted = {false};
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                adapter.swapData(staleSounds, new Runnable() {
+                    @Override
+                    public void run() {
+                        staleCommitted[0] = true;
+                    }
+                });
+
+                adapter.swapData(latestSounds, new Runnable() {
+                    @Override
+                    public void run() {
+                        committed.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue(committed.await(10, TimeUnit.SECONDS));
+
+        // Give a stale result the chance to arrive after the latest one
+        Thread.sleep(500);
+        instrumentation.waitForIdleSync();
+
+        assertFalse(staleCommitted[0]);
+        assertEquals(latestSounds.size(), adapter.getItemCount());
+        assertSame(latestSounds.get(latestSounds.size() - 1), adapter.getSoundObject(latestSounds.size() - 1));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void bindViewHolder_doesNotAllocate() throws InterruptedException {
+
+        final List<SoundObject> soundObjects = DatabaseBenchmarkTest.createSyntheticSounds(SOUND_COUNT);
+
+        swapAndLayout(new ArrayList<>(soundObjects));
+
+        final int[] allocations = new int[2];
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                SoundboardRecyclerAdapter.SoundboardViewHolder holder = adapter.createViewHolder(recyclerView, 0);
+                TextView textView = holder.itemView.findViewById(R.id.textViewItem);
+
+                // Warm up both loops, so no class loading or first time setup is counted
+                for (int i = 0; i < 100; i++) {
+
+                    adapter.bindViewHolder(holder, i);
+                    textView.setText(soundObjects.get(i).getItemName());
+                }
+
+                Debug.startAllocCounting();
+
+                // Count what setting the names alone allocates inside the TextView
+                Debug.resetThreadAllocCount();
+
+                for (int i = 0; i < SOUND_COUNT; i++) {
+                    textView.setText(soundObjects.get(i).getItemName());
+                }
+
+                allocations[0] = Debug.getThreadAllocCount();
+
+                Debug.resetThreadAllocCount();
+
+                for (int i = 0; i < SOUND_COUNT; i++) {
+                    adapter.bindViewHolder(holder, i);
+                }
+
+                allocations[1] = Debug.getThreadAllocCount();
+
+                Debug.stopAllocCounting();
+            }
+        });
+
+        int bindAllocations = allocations[1] - allocations[0];
+
+        Log.i(LOG_TAG, "Binding " + SOUND_COUNT + " sounds caused " + allocations[1] + " allocations, "
+                + allocations[0] + " of them by setting the names");
+
+        assertTrue(bindAllocations <= MAX_BIND_ALLOCATIONS);
+    }
+
+    @Test
+    public void getItemId_isStable() throws InterruptedException {
+
+        List<SoundObject> soundObjects = DatabaseBenchmarkTest.createSyntheticSounds(SOUND_COUNT);
+
+        swapAndLayout(new ArrayList<>(soundObjects));
+        long firstId = adapter.getItemId(0);
+        long lastId = adapter.getItemId(SOUND_COUNT - 1);
+
+        // The same sounds at other positions keep their ids
+        ArrayList<SoundObject> reversedSounds = new ArrayList<>(soundObjects);
+        Collections.reverse(reversedSounds);
+        swapAndLayout(reversedSounds);
+
+        assertTrue(adapter.hasStableIds());
+        assertEquals(firstId, adapter.getItemId(SOUND_COUNT - 1));
+        assertEquals(lastId, adapter.getItemId(0));
+        assertNotEquals(firstId, lastId);
+    }
+
+    /**
+     * Swaps the data of the adapter, waits until it is displayed and lays out the RecyclerView.
+     */
+    private void swapAndLayout(final ArrayList<SoundObject> data) throws InterruptedException {
+
+        final CountDownLatch committed = new CountDownLatch(1);
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                adapter.swapData(data, new Runnable() {
+                    @Override
+                    public void run() {
+                        committed.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue(committed.await(10, TimeUnit.SECONDS));
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                layout();
+            }
+        });
+    }
+
+    private void layout() {
+
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                             View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,232 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.List;
+
+/**
+ * Initialises the audio path once per process after the first frame has been drawn.
+ * A short silent primer brings up the audio output on a thread of its own and the most recently used
+ * sounds are preloaded one by one on the playback thread, so the first tap after a cold start does not
+ * pay for the lazy initialisation and never has to wait for the whole warmup.
+ * The duration of the warmup and the latency of the first tap with and without warmup are
+ * saved to be able to compare both.
+ */
+public final class AudioWarmup {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = AudioWarmup.class.getSimpleName();
+
+    // Define the number of recent sounds that are preloaded
+    public static final int PRELOAD_RECENT_SOUNDS = 4;
+
+    // Define the length and format of the silent primer
+    private static final int PRIMER_SAMPLE_RATE = 44100;
+    private static final int PRIMER_DURATION_MS = 50;
+
+    // Define a name for the preference file and the keys of the saved values
+    private static final String PREFS_NAME = "WarmupPref";
+    private static final String PREF_ENABLED_KEY = "enabled";
+    private static final String PREF_WARMUP_MS_KEY = "warmup_ms";
+    private static final String PREF_FIRST_TAP_SUM_KEY = "first_tap_sum_ms_";
+    private static final String PREF_FIRST_TAP_COUNT_KEY = "first_tap_count_";
+
+    // Remember if the warmup has been started and the first tap has been saved in this process
+    private static boolean started = false;
+    private static boolean firstTapSaved = false;
+
+    private AudioWarmup() {
+    }
+
+    /**
+     * Runs the warmup as soon as the first frame of the activity is drawn.
+     * Does nothing if the warmup already ran in this process or has been disabled.
+     *
+     * @param activity Activity whose first frame should not be delayed.
+     */
+    public static void runAfterFirstFrame(Activity activity) {
+
+        final Context context = activity.getApplicationContext();
+
+        if (started || !isEnabled(context)) {
+            return;
+        }
+
+        started = true;
+
+        final View decorView = activity.getWindow().getDecorView();
+
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                // Posting from the pre draw pass runs the task after the frame has been drawn
+                decorView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        warmup(context);
+                    }
+                });
+
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Starts the warmup. The primer is played on a thread of its own, the playback thread only preloads.
+     *
+     * @param context Context to access the sound resources.
+     */
+    private static void warmup(final Context context) {
+
+        final long start = SystemClock.elapsedRealtime();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+
+                final List<Integer> recentSoundIds = RecentSounds.get(context, PRELOAD_RECENT_SOUNDS);
+
+                PlaybackDispatcher.getInstance().dispatchWarmup(context, recentSoundIds, new Runnable() {
+                    @Override
+                    public void run() {
+
+                        long duration = SystemClock.elapsedRealtime() - start;
+
+                        getPreferences(context).edit().putLong(PREF_WARMUP_MS_KEY, duration).apply();
+
+                        Log.d(LOG_TAG, "Warmup preloaded " + recentSoundIds.size() + " sounds in "
+                                + duration + " ms");
+                    }
+                });
+
+                playSilentPrimer();
+            }
+        }, LOG_TAG).start();
+    }
+
+    /**
+     * Saves the latency of the first tap of this process, grouped by whether the warmup was enabled.
+     * Should be called when the activity stops.
+     *
+     * @param context Context to access the preference file.
+     */
+    public static synchronized void saveFirstTapLatency(Context context) {
+
+        long latency = LatencyTracer.getInstance().getFirstStartLatencyMs();
+
+        if (firstTapSaved || latency < 0) {
+            return;
+        }
+
+        firstTapSaved = true;
+
+        String suffix = Boolean.toString(started);
+        SharedPreferences prefs = getPreferences(context);
+
+        prefs.edit()
+             .putLong(PREF_FIRST_TAP_SUM_KEY + suffix,
+                      prefs.getLong(PREF_FIRST_TAP_SUM_KEY + suffix, 0) + latency)
+             .putInt(PREF_FIRST_TAP_COUNT_KEY + suffix,
+                     prefs.getInt(PREF_FIRST_TAP_COUNT_KEY + suffix, 0) + 1)
+             .apply();
+    }
+
+    /**
+     * Creates a text dump of the saved warmup timings.
+     *
+     * @param context Context to access the preference file.
+     * @return The duration of the last warmup and the average first tap latency with and without it.
+     */
+    public static String dump(Context context) {
+
+        SharedPreferences prefs = getPreferences(context);
+
+        return "warmup enabled: " + isEnabled(context) + "\n"
+                + "last warmup ms: " + prefs.getLong(PREF_WARMUP_MS_KEY, -1) + "\n"
+                + "first tap avg ms with warmup: " + averageFirstTap(prefs, true) + "\n"
+                + "first tap avg ms without warmup: " + averageFirstTap(prefs, false) + "\n";
+    }
+
+    /**
+     * @param context Context to access the preference file.
+     * @return True if the warmup runs on cold start.
+     */
+    public static boolean isEnabled(Context context) {
+
+        return getPreferences(context).getBoolean(PREF_ENABLED_KEY, true);
+    }
+
+    /**
+     * Enables or disables the warmup from the next cold start on.
+     *
+     * @param context Context to access the preference file.
+     * @param enabled True if the warmup should run.
+     */
+    public static void setEnabled(Context context, boolean enabled) {
+
+        getPreferences(context).edit().putBoolean(PREF_ENABLED_KEY, enabled).apply();
+    }
+
+    /**
+     * Plays a short silence to initialise the audio output.
+     */
+    private static void playSilentPrimer() {
+
+        int channelConfig = AudioFormat.CHANNEL_OUT_MONO;
+        int frames = PRIMER_SAMPLE_RATE * PRIMER_DURATION_MS / 1000;
+        int bufferSize = Math.max(frames * 2, AudioTrack.getMinBufferSize(
+            PRIMER_SAMPLE_RATE, channelConfig, AudioFormat.ENCODING_PCM_16BIT));
+
+        //noinspection deprecation
+        AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, PRIMER_SAMPLE_RATE,
+                                          channelConfig, AudioFormat.ENCODING_PCM_16BIT,
+                                          bufferSize, AudioTrack.MODE_STREAM);
+
+        try {
+
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                Log.e(LOG_TAG, "Failed to initialise the primer AudioTrack");
+                return;
+            }
+
+            track.play();
+            track.write(new short[frames], 0, frames);
+            track.stop();
+
+        } catch (IllegalStateException e) {
+            Log.e(LOG_TAG, "Failed to play the silent primer: " + e.getMessage());
+        } finally {
+            track.release();
+        }
+    }
+
+    private static String averageFirstTap(SharedPreferences prefs, boolean withWarmup) {
+
+        String suffix = Boolean.toString(withWarmup);
+        int count = prefs.getInt(PREF_FIRST_TAP_COUNT_KEY + suffix, 0);
+
+        if (count == 0) {
+            return "-";
+        }
+
+        return (prefs.getLong(PREF_FIRST_TAP_SUM_KEY + suffix, 0) / count) + " (" + count + " starts)";
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
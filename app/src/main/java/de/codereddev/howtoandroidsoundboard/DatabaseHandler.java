@@ -2,21 +2,35 @@ package de.codereddev.howtoandroidsoundboard;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 import de.codereddev.howtoandroidsoundboard.DatabaseSchema.FavoritesTable;
 import de.codereddev.howtoandroidsoundboard.DatabaseSchema.MainTable;
+import de.codereddev.howtoandroidsoundboard.DatabaseSchema.SearchTable;
+import de.codereddev.howtoandroidsoundboard.DatabaseSchema.TrigramTable;
 
 
 /**
  * Handles database queries.
- * Is designed as a Singleton to only use one instance over the whole app.
+ * Is designed as a Singleton to only use one instance and one connection pool over the whole app.
+ * Write-ahead logging is enabled so lists can be read while favorites are being written.
  */
 public class DatabaseHandler extends SQLiteOpenHelper {
 
@@ -24,31 +38,202 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     private static final String LOG_TAG = DatabaseHandler.class.getSimpleName();
 
     // Define a private variable that holds the database instance
-    private static DatabaseHandler instance = null;
+    private static volatile DatabaseHandler instance = null;
 
     // Define a context that's used for several tasks.
     private Context context;
 
     // Define a database name and version
     private static final String DATABASE_NAME = "soundboard.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 6;
 
-    // Define the SQL statements to create both tables
+    /*
+     * Define the SQL statements to create both tables.
+     * The name uses the NOCASE collation so the ordering by name can use the name index.
+     * The search key holds the normalized name that every search compares with.
+     */
     private static final String SQL_CREATE_MAIN_TABLE = "CREATE TABLE IF NOT EXISTS "
             + MainTable.TABLE_NAME + "("
             + MainTable._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-            + MainTable.NAME + " TEXT, "
-            + MainTable.RESOURCE_ID + " INTEGER unique);";
+            + MainTable.NAME + " TEXT COLLATE NOCASE, "
+            + MainTable.RESOURCE_ID + " INTEGER unique, "
+            + MainTable.SOUND_KEY + " TEXT unique, "
+            + MainTable.SEARCH_KEY + " TEXT);";
 
     /*
-     * The sound resource id in FAVORITES_TABLE is not unique because we have to set it again on
-     * every app update because every resource id changes if you add new resources
+     * Favorites are identified by the sound key because resource ids change between builds.
+     * The resource id column is only kept for databases that were created in version 1.
      */
     private static final String SQL_CREATE_FAVORITES_TABLE = "CREATE TABLE IF NOT EXISTS "
             + FavoritesTable.TABLE_NAME + "("
             + FavoritesTable._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + FavoritesTable.NAME + " TEXT, "
-            + FavoritesTable.RESOURCE_ID + " INTEGER);";
+            + FavoritesTable.RESOURCE_ID + " INTEGER, "
+            + FavoritesTable.SOUND_KEY + " TEXT);";
+
+    // Define the SQL statement that makes every favorite unique by its sound key
+    private static final String SQL_CREATE_FAVORITES_SOUND_KEY_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS "
+            + FavoritesTable.SOUND_KEY_INDEX + " ON "
+            + FavoritesTable.TABLE_NAME + "(" + FavoritesTable.SOUND_KEY + ");";
+
+    // Define the SQL statements to create the indexes used by lookups, sorting and search
+    private static final String SQL_CREATE_MAIN_NAME_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + MainTable.NAME_INDEX + " ON "
+            + MainTable.TABLE_NAME + "(" + MainTable.NAME + " COLLATE NOCASE);";
+
+    private static final String SQL_CREATE_MAIN_SEARCH_KEY_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + MainTable.SEARCH_KEY_INDEX + " ON "
+            + MainTable.TABLE_NAME + "(" + MainTable.SEARCH_KEY + ");";
+
+    private static final String SQL_CREATE_FAVORITES_RESOURCE_ID_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + FavoritesTable.RESOURCE_ID_INDEX + " ON "
+            + FavoritesTable.TABLE_NAME + "(" + FavoritesTable.RESOURCE_ID + ");";
+
+    private static final String SQL_CREATE_FAVORITES_NAME_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + FavoritesTable.NAME_INDEX + " ON "
+            + FavoritesTable.TABLE_NAME + "(" + FavoritesTable.NAME + ");";
+
+    // Define the SQL statement that is compiled once to insert many sounds
+    private static final String SQL_INSERT_MAIN = "INSERT INTO "
+            + MainTable.TABLE_NAME + "("
+            + MainTable.NAME + ", "
+            + MainTable.RESOURCE_ID + ", "
+            + MainTable.SOUND_KEY + ", "
+            + MainTable.SEARCH_KEY + ") VALUES (?, ?, ?, ?);";
+
+    // Define the SQL statements that are compiled once to write a batch of favorite changes
+    private static final String SQL_INSERT_FAVORITE = "INSERT OR IGNORE INTO "
+            + FavoritesTable.TABLE_NAME + "("
+            + FavoritesTable.NAME + ", "
+            + FavoritesTable.RESOURCE_ID + ", "
+            + FavoritesTable.SOUND_KEY + ") VALUES (?, ?, ?);";
+
+    private static final String SQL_DELETE_FAVORITE = "DELETE FROM "
+            + FavoritesTable.TABLE_NAME + " WHERE "
+            + FavoritesTable.SOUND_KEY + " = ?;";
+
+    /*
+     * Define the SQL fragments the paged lists are read with. Both select the name, resource id, sound key
+     * and the row id and are sorted by name and row id, which the name indexes deliver without sorting.
+     * Favorites are joined with the MAIN table, so only sounds of the current build are listed.
+     */
+    private static final String SQL_SELECT_CATALOG_PAGE = "SELECT "
+            + MainTable.NAME + ", "
+            + MainTable.RESOURCE_ID + ", "
+            + MainTable.SOUND_KEY + ", "
+            + MainTable._ID + " FROM " + MainTable.TABLE_NAME;
+
+    private static final String SQL_SELECT_FAVORITES_PAGE = "SELECT f."
+            + FavoritesTable.NAME + ", m."
+            + MainTable.RESOURCE_ID + ", f."
+            + FavoritesTable.SOUND_KEY + ", f."
+            + FavoritesTable._ID + " FROM " + FavoritesTable.TABLE_NAME + " f JOIN " + MainTable.TABLE_NAME
+            + " m ON m." + MainTable.SOUND_KEY + " = f." + FavoritesTable.SOUND_KEY;
+
+    // Define the full text search modules the search table can be backed by
+    private static final int SEARCH_UNKNOWN = -1;
+    private static final int SEARCH_NONE = 0;
+    private static final int SEARCH_FTS4 = 4;
+    private static final int SEARCH_FTS5 = 5;
+
+    /*
+     * Define the SQL statements to create the search table, from the most to the least capable module.
+     * FTS5 is missing from the SQLite build of most devices and unicode61 from very old ones.
+     */
+    private static final String[] SQL_CREATE_SEARCH_TABLE = {
+        "CREATE VIRTUAL TABLE " + SearchTable.TABLE_NAME + " USING fts5("
+            + SearchTable.SEARCH_KEY + ", content='" + MainTable.TABLE_NAME + "', content_rowid='"
+            + MainTable._ID + "');",
+        "CREATE VIRTUAL TABLE " + SearchTable.TABLE_NAME + " USING fts4("
+            + SearchTable.SEARCH_KEY + ", content=\"" + MainTable.TABLE_NAME + "\", tokenize=unicode61);",
+        "CREATE VIRTUAL TABLE " + SearchTable.TABLE_NAME + " USING fts4("
+            + SearchTable.SEARCH_KEY + ", content=\"" + MainTable.TABLE_NAME + "\");"
+    };
+
+    // Define the modules that belong to the statements above
+    private static final int[] SEARCH_TABLE_MODULES = {SEARCH_FTS5, SEARCH_FTS4, SEARCH_FTS4};
+
+    // Define the SQL statements of the triggers that keep an FTS5 search table in sync
+    private static final String[] SQL_CREATE_FTS5_TRIGGERS = {
+        "CREATE TRIGGER " + SearchTable.INSERT_TRIGGER + " AFTER INSERT ON " + MainTable.TABLE_NAME
+            + " BEGIN INSERT INTO " + SearchTable.TABLE_NAME + "(rowid, " + SearchTable.SEARCH_KEY
+            + ") VALUES (new." + MainTable._ID + ", new." + MainTable.SEARCH_KEY + "); END;",
+        "CREATE TRIGGER " + SearchTable.DELETE_TRIGGER + " AFTER DELETE ON " + MainTable.TABLE_NAME
+            + " BEGIN INSERT INTO " + SearchTable.TABLE_NAME + "(" + SearchTable.TABLE_NAME + ", rowid, "
+            + SearchTable.SEARCH_KEY + ") VALUES ('delete', old." + MainTable._ID + ", old." + MainTable.SEARCH_KEY
+            + "); END;",
+        "CREATE TRIGGER " + SearchTable.AFTER_UPDATE_TRIGGER + " AFTER UPDATE OF " + MainTable.SEARCH_KEY
+            + " ON " + MainTable.TABLE_NAME + " BEGIN INSERT INTO " + SearchTable.TABLE_NAME + "("
+            + SearchTable.TABLE_NAME + ", rowid, " + SearchTable.SEARCH_KEY + ") VALUES ('delete', old."
+            + MainTable._ID + ", old." + MainTable.SEARCH_KEY + "); INSERT INTO " + SearchTable.TABLE_NAME
+            + "(rowid, " + SearchTable.SEARCH_KEY + ") VALUES (new." + MainTable._ID + ", new."
+            + MainTable.SEARCH_KEY + "); END;"
+    };
+
+    /*
+     * Define the SQL statements of the triggers that keep an FTS4 search table in sync.
+     * FTS4 reads the old tokens from the MAIN table so they are removed before the row changes.
+     */
+    private static final String[] SQL_CREATE_FTS4_TRIGGERS = {
+        "CREATE TRIGGER " + SearchTable.INSERT_TRIGGER + " AFTER INSERT ON " + MainTable.TABLE_NAME
+            + " BEGIN INSERT INTO " + SearchTable.TABLE_NAME + "(docid, " + SearchTable.SEARCH_KEY
+            + ") VALUES (new." + MainTable._ID + ", new." + MainTable.SEARCH_KEY + "); END;",
+        "CREATE TRIGGER " + SearchTable.DELETE_TRIGGER + " BEFORE DELETE ON " + MainTable.TABLE_NAME
+            + " BEGIN DELETE FROM " + SearchTable.TABLE_NAME + " WHERE docid = old." + MainTable._ID
+            + "; END;",
+        "CREATE TRIGGER " + SearchTable.BEFORE_UPDATE_TRIGGER + " BEFORE UPDATE OF " + MainTable.SEARCH_KEY
+            + " ON " + MainTable.TABLE_NAME + " BEGIN DELETE FROM " + SearchTable.TABLE_NAME
+            + " WHERE docid = old." + MainTable._ID + "; END;",
+        "CREATE TRIGGER " + SearchTable.AFTER_UPDATE_TRIGGER + " AFTER UPDATE OF " + MainTable.SEARCH_KEY
+            + " ON " + MainTable.TABLE_NAME + " BEGIN INSERT INTO " + SearchTable.TABLE_NAME + "(docid, "
+            + SearchTable.SEARCH_KEY + ") VALUES (new." + MainTable._ID + ", new." + MainTable.SEARCH_KEY + "); END;"
+    };
+
+    /*
+     * Define the SQL statements to create the trigram table and the triggers that remove
+     * the trigrams of deleted and renamed sounds. The trigrams of new names are written
+     * by the ingest path, because SQLite can not split names into trigrams.
+     */
+    private static final String SQL_CREATE_TRIGRAM_TABLE = "CREATE TABLE IF NOT EXISTS "
+            + TrigramTable.TABLE_NAME + "("
+            + TrigramTable.TRIGRAM + " TEXT NOT NULL, "
+            + TrigramTable.SOUND_ID + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + TrigramTable.TRIGRAM + ", " + TrigramTable.SOUND_ID + "));";
+
+    private static final String SQL_CREATE_TRIGRAM_SOUND_ID_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + TrigramTable.SOUND_ID_INDEX + " ON "
+            + TrigramTable.TABLE_NAME + "(" + TrigramTable.SOUND_ID + ");";
+
+    private static final String SQL_CREATE_TRIGRAM_DELETE_TRIGGER = "CREATE TRIGGER "
+            + TrigramTable.DELETE_TRIGGER + " AFTER DELETE ON " + MainTable.TABLE_NAME
+            + " BEGIN DELETE FROM " + TrigramTable.TABLE_NAME + " WHERE " + TrigramTable.SOUND_ID
+            + " = old." + MainTable._ID + "; END;";
+
+    private static final String SQL_CREATE_TRIGRAM_UPDATE_TRIGGER = "CREATE TRIGGER "
+            + TrigramTable.UPDATE_TRIGGER + " AFTER UPDATE OF " + MainTable.SEARCH_KEY + " ON "
+            + MainTable.TABLE_NAME + " BEGIN DELETE FROM " + TrigramTable.TABLE_NAME + " WHERE "
+            + TrigramTable.SOUND_ID + " = old." + MainTable._ID + "; END;";
+
+    // Define the SQL statement that is compiled once to insert the trigrams of many sounds
+    private static final String SQL_INSERT_TRIGRAM = "INSERT OR IGNORE INTO "
+            + TrigramTable.TABLE_NAME + "("
+            + TrigramTable.TRIGRAM + ", "
+            + TrigramTable.SOUND_ID + ") VALUES (?, ?);";
+
+    // Define the maximum number of query trigrams, candidates and the minimum coverage of the fuzzy search
+    private static final int MAX_FUZZY_QUERY_TRIGRAMS = 32;
+    private static final int MAX_FUZZY_CANDIDATES = 50;
+    private static final float MIN_FUZZY_COVERAGE = 0.34f;
+
+    // Define a name for the preference file and a key name to save the hash of the synced catalog
+    private static final String CATALOG_PREFS_NAME = "CatalogPref";
+    private static final String PREF_CATALOG_HASH_KEY = "catalog_hash";
+
+    // Holds the insert rate of the last bulk insert
+    private volatile long lastInsertRowsPerSecond = 0;
+
+    // Holds the module of the search table once it is known
+    private volatile int searchModule = SEARCH_UNKNOWN;
 
     /**
      * Creates the database.
@@ -60,6 +245,9 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         Log.d(LOG_TAG, "Database successfully initialised: " + getDatabaseName());
 
         this.context = context;
+
+        // Let readers work on a snapshot while a writer is active
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
@@ -70,8 +258,15 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      */
     public static DatabaseHandler getInstance(Context context) {
 
+        // Double checked locking keeps the common path free of synchronisation
         if (instance == null) {
-            return new DatabaseHandler(context.getApplicationContext());
+
+            synchronized (DatabaseHandler.class) {
+
+                if (instance == null) {
+                    instance = new DatabaseHandler(context.getApplicationContext());
+                }
+            }
         }
 
         return instance;
@@ -82,8 +277,11 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
         try {
             // Execute the creation statements
-            db.execSQL(SQL_CREATE_MAIN_TABLE);
+            createMainTable(db);
             db.execSQL(SQL_CREATE_FAVORITES_TABLE);
+            db.execSQL(SQL_CREATE_FAVORITES_SOUND_KEY_INDEX);
+            db.execSQL(SQL_CREATE_FAVORITES_RESOURCE_ID_INDEX);
+            db.execSQL(SQL_CREATE_FAVORITES_NAME_INDEX);
 
         } catch (SQLException e) {
             Log.e(LOG_TAG, "Failed to create tables: " + e.getMessage());
@@ -94,21 +292,177 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 
         /*
-         * We are using the app version instead of the database version
-         * to upgrade the database, so this method is unnecessary.
-         * If it gets called somehow it should only delete the main table
-         * that will be refilled again in the SoundboardActivity.
+         * The MAIN_TABLE only mirrors the shipped catalog, so it is simply recreated
+         * and refilled by syncSoundCollection() in the SoundboardActivity.
+         * The FAVORITES_TABLE holds user data and is migrated step by step.
+         * Version 3 only adds indexes, version 4 the search table, version 5 the trigram table
+         * and version 6 the search key which are created by onCreate().
          */
         db.execSQL("DROP TABLE IF EXISTS " + MainTable.TABLE_NAME);
+        context.getSharedPreferences(CATALOG_PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+
+        if (oldVersion < 2) {
+            migrateFavoritesToVersion2(db);
+        }
+
         onCreate(db);
     }
 
+    /**
+     * Adds the sound key to the FAVORITES_TABLE of version 1.
+     * Version 1 stored favorites by resource id which might be outdated at this point,
+     * so the keys are taken from the shipped sound with the same name.
+     *
+     * @param db Database that is being upgraded.
+     */
+    private void migrateFavoritesToVersion2(SQLiteDatabase db) {
+
+        db.execSQL("ALTER TABLE " + FavoritesTable.TABLE_NAME + " ADD COLUMN "
+                       + FavoritesTable.SOUND_KEY + " TEXT;");
+
+        SQLiteStatement statement = db.compileStatement(
+            "UPDATE " + FavoritesTable.TABLE_NAME + " SET " + FavoritesTable.SOUND_KEY + " = ?, "
+                + FavoritesTable.RESOURCE_ID + " = ? WHERE " + FavoritesTable.NAME + " = ?;");
+
+        try {
+
+            for (SoundObject soundObject : getShippedCatalog()) {
+
+                statement.bindString(1, soundObject.getItemKey());
+                statement.bindLong(2, soundObject.getItemId());
+                statement.bindString(3, soundObject.getItemName());
+                statement.executeUpdateDelete();
+            }
+
+        } finally {
+            statement.close();
+        }
+
+        // Version 1 did not prevent duplicates, so keep only the oldest favorite of every sound
+        db.execSQL("DELETE FROM " + FavoritesTable.TABLE_NAME + " WHERE "
+                       + FavoritesTable.SOUND_KEY + " IS NOT NULL AND " + FavoritesTable._ID
+                       + " NOT IN (SELECT MIN(" + FavoritesTable._ID + ") FROM "
+                       + FavoritesTable.TABLE_NAME + " GROUP BY " + FavoritesTable.SOUND_KEY + ");");
+    }
+
     // Defining the sound buttons
 
     /**
-     * Creates the predefined collection of sounds and inserts them into the database.
+     * Creates the MAIN table, its name index and the search and trigram tables that mirror it.
+     *
+     * @param db Writable database instance.
      */
-    public void createSoundCollection() {
+    private void createMainTable(SQLiteDatabase db) {
+
+        db.execSQL(SQL_CREATE_MAIN_TABLE);
+        db.execSQL(SQL_CREATE_MAIN_NAME_INDEX);
+        db.execSQL(SQL_CREATE_MAIN_SEARCH_KEY_INDEX);
+
+        // The MAIN table is empty, so are the trigrams
+        db.execSQL("DROP TABLE IF EXISTS " + TrigramTable.TABLE_NAME);
+        db.execSQL(SQL_CREATE_TRIGRAM_TABLE);
+        db.execSQL(SQL_CREATE_TRIGRAM_SOUND_ID_INDEX);
+        db.execSQL(SQL_CREATE_TRIGRAM_DELETE_TRIGGER);
+        db.execSQL(SQL_CREATE_TRIGRAM_UPDATE_TRIGGER);
+
+        createSearchTable(db);
+    }
+
+    /**
+     * Recreates the full text search table with the best module the SQLite build supports
+     * and the triggers that keep it in sync with the MAIN table.
+     * If no module is supported, searching falls back to a LIKE query on the MAIN table.
+     *
+     * @param db Writable database instance.
+     */
+    private void createSearchTable(SQLiteDatabase db) {
+
+        searchModule = SEARCH_NONE;
+
+        for (int i = 0; i < SQL_CREATE_SEARCH_TABLE.length; i++) {
+
+            dropSearchTable(db);
+
+            try {
+
+                db.execSQL(SQL_CREATE_SEARCH_TABLE[i]);
+
+                String[] triggers = SEARCH_TABLE_MODULES[i] == SEARCH_FTS5
+                                    ? SQL_CREATE_FTS5_TRIGGERS : SQL_CREATE_FTS4_TRIGGERS;
+
+                for (String trigger : triggers) {
+                    db.execSQL(trigger);
+                }
+
+                // Index the rows that are already part of the MAIN table
+                db.execSQL("INSERT INTO " + SearchTable.TABLE_NAME + "(" + SearchTable.TABLE_NAME
+                               + ") VALUES ('rebuild');");
+
+                searchModule = SEARCH_TABLE_MODULES[i];
+
+                Log.d(LOG_TAG, "(SEARCH) Created search table using FTS" + searchModule);
+                return;
+
+            } catch (SQLException e) {
+                Log.d(LOG_TAG, "(SEARCH) Module is not supported: " + e.getMessage());
+            }
+        }
+
+        dropSearchTable(db);
+
+        Log.e(LOG_TAG, "(SEARCH) Full text search is not available");
+    }
+
+    /**
+     * Drops the search table and its triggers.
+     *
+     * @param db Writable database instance.
+     */
+    private static void dropSearchTable(SQLiteDatabase db) {
+
+        db.execSQL("DROP TRIGGER IF EXISTS " + SearchTable.INSERT_TRIGGER);
+        db.execSQL("DROP TRIGGER IF EXISTS " + SearchTable.DELETE_TRIGGER);
+        db.execSQL("DROP TRIGGER IF EXISTS " + SearchTable.BEFORE_UPDATE_TRIGGER);
+        db.execSQL("DROP TRIGGER IF EXISTS " + SearchTable.AFTER_UPDATE_TRIGGER);
+        db.execSQL("DROP TABLE IF EXISTS " + SearchTable.TABLE_NAME);
+    }
+
+    /**
+     * Returns the module of the search table. Reads it from the schema after a restart of the app.
+     *
+     * @param database Readable database instance.
+     * @return SEARCH_FTS5, SEARCH_FTS4 or SEARCH_NONE if there is no search table.
+     */
+    private int getSearchModule(SQLiteDatabase database) {
+
+        if (searchModule == SEARCH_UNKNOWN) {
+
+            String sql = null;
+
+            try {
+                sql = DatabaseUtils.stringForQuery(database,
+                                                   "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?",
+                                                   new String[]{SearchTable.TABLE_NAME});
+            } catch (SQLException e) {
+                Log.d(LOG_TAG, "(SEARCH) There is no search table: " + e.getMessage());
+            }
+
+            if (sql == null) {
+                searchModule = SEARCH_NONE;
+            } else {
+                searchModule = sql.toLowerCase(Locale.ROOT).contains("fts5") ? SEARCH_FTS5 : SEARCH_FTS4;
+            }
+        }
+
+        return searchModule;
+    }
+
+    /**
+     * Creates the predefined collection of sounds that is shipped with the app.
+     *
+     * @return A list of all SoundObjects the MAIN table should contain.
+     */
+    public ArrayList<SoundObject> getShippedCatalog() {
 
         // Get all entries of the name StringArray(soundNames) declared in strings.xml
         String[] nameList = context.getResources().getStringArray(R.array.soundNames);
@@ -120,87 +474,278 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         ArrayList<SoundObject> soundItems = new ArrayList<>();
 
         for (int i = 0; i < soundIDs.length; i++) {
-            soundItems.add(new SoundObject(nameList[i], soundIDs[i]));
+            soundItems.add(new SoundObject(nameList[i], soundIDs[i],
+                                           SoundKeys.keyOf(context, soundIDs[i])));
         }
 
-        /*
-         * Call putIntoMain() for each SoundObject in soundItems to fill
-         * the MAIN_TABLE with all necessary information.
-         */
-        for (SoundObject i : soundItems) {
-            putIntoMain(i);
-        }
+        return soundItems;
     }
 
-    // Check if the sound id allready exists in the selected table
-
     /**
-     * Checks if the favorites table contains a SoundObject.
+     * Brings the MAIN table in line with the shipped catalog.
+     * Sounds are matched by their sound key and only the rows that were added, changed or removed are written,
+     * all in one transaction. If the hash of the shipped catalog equals the hash of the last
+     * synchronised catalog nothing is read or written at all.
      *
-     * @param database    Readable database instance.
-     * @param soundObject SoundObject to check for.
-     * @return True if the SoundObject is already part of the table.
+     * @return The number of rows that have been inserted, updated or deleted.
      */
-    private boolean verification(SQLiteDatabase database, SoundObject soundObject) {
+    public int syncSoundCollection() {
+
+        ArrayList<SoundObject> shippedCatalog = getShippedCatalog();
+        long catalogHash = hashCatalog(shippedCatalog);
+
+        SharedPreferences prefs = context.getSharedPreferences(CATALOG_PREFS_NAME, Context.MODE_PRIVATE);
 
-        int count = -1;
+        SQLiteDatabase database = this.getWritableDatabase();
+
+        // Skip the sync if the catalog is unchanged and the table has not been dropped in between
+        if (prefs.getLong(PREF_CATALOG_HASH_KEY, 0) == catalogHash
+                && DatabaseUtils.queryNumEntries(database, MainTable.TABLE_NAME) != 0) {
+
+            Log.d(LOG_TAG, "(MAIN) Catalog is up to date");
+            return 0;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+
+        // Get the stored rows by sound key. Each value holds the row _id and the resource id.
+        HashMap<String, long[]> storedRows = new HashMap<>();
+        HashMap<String, String> storedNames = new HashMap<>();
         Cursor cursor = null;
 
         try {
 
-            // Get all rows from the selected table that contain the given sound id
-            cursor = database.query(FavoritesTable.TABLE_NAME, new String[]{FavoritesTable.NAME},
-                                    FavoritesTable.RESOURCE_ID + "=?",
-                                    new String[]{soundObject.getItemId().toString()},
-                                    null, null, null);
+            cursor = database.query(MainTable.TABLE_NAME,
+                                    new String[]{MainTable._ID, MainTable.SOUND_KEY,
+                                                 MainTable.RESOURCE_ID, MainTable.NAME},
+                                    null, null, null, null, null);
 
-            // If the entry with the given sound id exists get the rows _id as count value
-            if (cursor.moveToFirst()) {
-                count = cursor.getInt(0);
+            while (cursor.moveToNext()) {
+                storedRows.put(cursor.getString(1), new long[]{cursor.getLong(0), cursor.getLong(2)});
+                storedNames.put(cursor.getString(1), cursor.getString(3));
             }
 
-        } catch (NullPointerException e) {
-            Log.e(LOG_TAG, "Cursor is a NullPointer: " + e.getMessage());
         } finally {
 
-            // close the cursor after the verification and if it is filled with something
             if (cursor != null) {
                 cursor.close();
             }
         }
 
-        // Return true if sound exists in the selected table
-        return (count > 0);
+        // Find all sounds that have been added or whose resource id or name has changed
+        ArrayList<SoundObject> insertedSounds = new ArrayList<>();
+        ArrayList<long[]> updatedRows = new ArrayList<>();
+        ArrayList<String> updatedNames = new ArrayList<>();
+
+        for (SoundObject soundObject : shippedCatalog) {
+
+            long[] storedRow = storedRows.remove(soundObject.getItemKey());
+
+            if (storedRow == null) {
+                insertedSounds.add(soundObject);
+            } else if (storedRow[1] != soundObject.getItemId()
+                    || !soundObject.getItemName().equals(storedNames.get(soundObject.getItemKey()))) {
+                updatedRows.add(new long[]{storedRow[0], soundObject.getItemId()});
+                updatedNames.add(soundObject.getItemName());
+            }
+        }
+
+        // All rows that are left over are not part of the shipped catalog anymore
+        Collection<long[]> deletedRows = storedRows.values();
+
+        database.beginTransaction();
+
+        SQLiteStatement deleteStatement = database.compileStatement(
+            "DELETE FROM " + MainTable.TABLE_NAME + " WHERE " + MainTable._ID + " = ?;");
+        SQLiteStatement clearStatement = database.compileStatement(
+            "UPDATE " + MainTable.TABLE_NAME + " SET " + MainTable.RESOURCE_ID + " = NULL WHERE "
+                + MainTable._ID + " = ?;");
+        SQLiteStatement updateStatement = database.compileStatement(
+            "UPDATE " + MainTable.TABLE_NAME + " SET " + MainTable.RESOURCE_ID + " = ?, "
+                + MainTable.NAME + " = ?, " + MainTable.SEARCH_KEY + " = ? WHERE " + MainTable._ID + " = ?;");
+        SQLiteStatement trigramStatement = database.compileStatement(SQL_INSERT_TRIGRAM);
+
+        try {
+
+            for (long[] row : deletedRows) {
+
+                deleteStatement.bindLong(1, row[0]);
+                deleteStatement.executeUpdateDelete();
+            }
+
+            /*
+             * Resource ids are unique and might be swapped between sounds.
+             * Clearing them first prevents conflicts while the new ids are written.
+             */
+            for (long[] row : updatedRows) {
+
+                clearStatement.bindLong(1, row[0]);
+                clearStatement.executeUpdateDelete();
+            }
+
+            for (int i = 0; i < updatedRows.size(); i++) {
+
+                updateStatement.bindLong(1, updatedRows.get(i)[1]);
+                String searchKey = SearchNormalizer.normalize(updatedNames.get(i));
+
+                updateStatement.bindString(2, updatedNames.get(i));
+                updateStatement.bindString(3, searchKey);
+                updateStatement.bindLong(4, updatedRows.get(i)[0]);
+
+                // Writing the search key removes the old trigrams through a trigger
+                if (updateStatement.executeUpdateDelete() > 0) {
+                    insertTrigrams(trigramStatement, updatedRows.get(i)[0], searchKey);
+                }
+            }
+
+            // Runs in the transaction that is already open
+            insertIntoMain(insertedSounds);
+
+            database.setTransactionSuccessful();
+
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "(MAIN) Failed to sync the catalog: " + e.getMessage());
+            return 0;
+        } finally {
+
+            database.endTransaction();
+            deleteStatement.close();
+            clearStatement.close();
+            updateStatement.close();
+            trigramStatement.close();
+        }
+
+        prefs.edit().putLong(PREF_CATALOG_HASH_KEY, catalogHash).apply();
+
+        int changes = insertedSounds.size() + updatedRows.size() + deletedRows.size();
+
+        Log.d(LOG_TAG, "(MAIN) Synced catalog in " + (SystemClock.elapsedRealtime() - start)
+                + " ms: " + insertedSounds.size() + " inserted, " + updatedRows.size()
+                + " updated, " + deletedRows.size() + " deleted");
+
+        return changes;
+    }
+
+    /**
+     * Calculates a 64 bit FNV-1a hash over the names, keys and resource ids of a catalog.
+     *
+     * @param soundObjects Catalog to hash.
+     * @return The hash of the catalog. Never 0 to be distinguishable from a missing hash.
+     */
+    private static long hashCatalog(List<SoundObject> soundObjects) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (SoundObject soundObject : soundObjects) {
+
+            String name = soundObject.getItemName() + '\0' + soundObject.getItemKey();
+
+            for (int i = 0; i < name.length(); i++) {
+                hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+            }
+
+            hash = (hash ^ 0) * 0x100000001b3L;
+            hash = (hash ^ soundObject.getItemId()) * 0x100000001b3L;
+        }
+
+        return hash == 0 ? 1 : hash;
     }
 
     // Add sounds to MAIN_TABLE
 
     /**
-     * Inserts a SoundObject into the MAIN table.
+     * Inserts a list of SoundObjects into the MAIN table.
+     * All rows are written in one transaction with one compiled statement,
+     * so the whole list only costs a single commit.
      *
-     * @param soundObject SoundObject to insert.
+     * @param soundObjects SoundObjects to insert.
+     * @return The number of inserted rows.
      */
-    private void putIntoMain(SoundObject soundObject) {
+    public int insertIntoMain(List<SoundObject> soundObjects) {
 
         // Get a writable instance of the database
         SQLiteDatabase database = this.getWritableDatabase();
 
+        SQLiteStatement statement = database.compileStatement(SQL_INSERT_MAIN);
+        SQLiteStatement trigramStatement = database.compileStatement(SQL_INSERT_TRIGRAM);
+
+        long start = SystemClock.elapsedRealtime();
+        int inserted = 0;
+
+        database.beginTransaction();
+
         try {
 
-            // Put the information into a ContentValues object
-            ContentValues contentValues = new ContentValues();
+            for (SoundObject soundObject : soundObjects) {
+
+                statement.bindString(1, soundObject.getItemName());
+                statement.bindLong(2, soundObject.getItemId());
 
-            contentValues.put(MainTable.NAME, soundObject.getItemName());
-            contentValues.put(MainTable.RESOURCE_ID, soundObject.getItemId());
+                if (soundObject.getItemKey() != null) {
+                    statement.bindString(3, soundObject.getItemKey());
+                } else {
+                    statement.bindNull(3);
+                }
 
-            // Insert the SoundObject into the MAIN_TABLE
-            database.insertOrThrow(MainTable.TABLE_NAME, null, contentValues);
+                // Normalize the name once here so searching costs nothing extra
+                String searchKey = SearchNormalizer.normalize(soundObject.getItemName());
+                statement.bindString(4, searchKey);
 
-        } catch (SQLException e) {
-            Log.e(LOG_TAG, "(MAIN) Failed to insert sound: " + e.getMessage());
+                try {
+
+                    // Insert the SoundObject into the MAIN_TABLE and its trigrams for the fuzzy search
+                    long rowId = statement.executeInsert();
+                    insertTrigrams(trigramStatement, rowId, searchKey);
+                    inserted++;
+
+                } catch (SQLException e) {
+                    Log.e(LOG_TAG, "(MAIN) Failed to insert sound: " + e.getMessage());
+                }
+            }
+
+            database.setTransactionSuccessful();
+
+        } finally {
+
+            database.endTransaction();
+            statement.close();
+            trigramStatement.close();
+        }
+
+        long duration = Math.max(1, SystemClock.elapsedRealtime() - start);
+        lastInsertRowsPerSecond = inserted * 1000L / duration;
+
+        Log.d(LOG_TAG, "(MAIN) Inserted " + inserted + " sounds in " + duration + " ms ("
+                + lastInsertRowsPerSecond + " rows/s)");
+
+        return inserted;
+    }
+
+    /**
+     * Inserts the distinct trigrams of a sound into the trigram table.
+     *
+     * @param trigramStatement Compiled SQL_INSERT_TRIGRAM statement.
+     * @param rowId            _ID of the sound in the MAIN table.
+     * @param searchKey        Search key of the sound.
+     */
+    private static void insertTrigrams(SQLiteStatement trigramStatement, long rowId, String searchKey) {
+
+        for (String trigram : Trigrams.of(searchKey)) {
+
+            trigramStatement.bindString(1, trigram);
+            trigramStatement.bindLong(2, rowId);
+            trigramStatement.executeInsert();
         }
     }
 
+    /**
+     * @return The number of rows per second the last call of insertIntoMain() has inserted.
+     */
+    public long getLastInsertRowsPerSecond() {
+
+        return lastInsertRowsPerSecond;
+    }
+
     /**
      * Wraps the content of MAIN table into an ArrayList.
      *
@@ -218,7 +763,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         try {
             // Get a cursor filled with all information from the MAIN_TABLE
             cursor = database.query(MainTable.TABLE_NAME,
-                                    new String[]{MainTable.NAME, MainTable.RESOURCE_ID}, null, null,
+                                    new String[]{MainTable.NAME, MainTable.RESOURCE_ID, MainTable.SOUND_KEY}, null, null,
                                     null, null, MainTable.NAME);
 
             // Check if the cursor is empty or failed to convert the data
@@ -229,8 +774,9 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
                     String name = cursor.getString(cursor.getColumnIndex(MainTable.NAME));
                     Integer resId = cursor.getInt(cursor.getColumnIndex(MainTable.RESOURCE_ID));
+                    String key = cursor.getString(cursor.getColumnIndex(MainTable.SOUND_KEY));
 
-                    soundObjects.add(new SoundObject(name, resId));
+                    soundObjects.add(new SoundObject(name, resId, key));
                 }
 
             } else {
@@ -251,49 +797,168 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     }
 
     /**
-     * Searches for database entries which begin with the given string.
+     * Searches for database entries that contain words which begin with the words of the given string.
+     * Sounds whose whole name begins with the given string are ranked first.
+     * The query is normalized like the search keys, so case and diacritics do not matter.
      *
      * @param queryString Query to search for.
-     * @return An ArrayList that holds all SoundObjects that begin with the given string.
+     * @return An ArrayList that holds all matching SoundObjects, best matches first.
      */
     public ArrayList<SoundObject> getSoundCollectionFromQuery(String queryString) {
 
+        String normalizedQuery = SearchNormalizer.normalize(queryString);
+
+        // An empty query matches every sound like the prefix search did
+        if (normalizedQuery.isEmpty()) {
+            return getSoundCollection();
+        }
+
         SQLiteDatabase database = this.getReadableDatabase();
 
-        ArrayList<SoundObject> soundObjects = new ArrayList<>();
+        int module = getSearchModule(database);
+
+        if (module == SEARCH_NONE) {
+            return getSoundCollectionFromPrefixQuery(queryString);
+        }
+
+        // FTS4 has no ranking function, so shorter names that are closer to the query come first
+        String rank = module == SEARCH_FTS5 ? "bm25(" + SearchTable.TABLE_NAME + ")" : "length(m." + MainTable.NAME + ")";
+
+        Cursor cursor = null;
+
+        try {
+            // Get a cursor filled with the matching sounds of the MAIN_TABLE
+            cursor = database.rawQuery("SELECT m." + MainTable.NAME + ", m." + MainTable.RESOURCE_ID + ", m."
+                                           + MainTable.SOUND_KEY + " FROM " + SearchTable.TABLE_NAME + " JOIN "
+                                           + MainTable.TABLE_NAME + " m ON m." + MainTable._ID + " = "
+                                           + SearchTable.TABLE_NAME + ".rowid WHERE " + SearchTable.TABLE_NAME
+                                           + " MATCH ? ORDER BY (m." + MainTable.SEARCH_KEY + " >= ? AND m."
+                                           + MainTable.SEARCH_KEY + " < ?) DESC, " + rank + ", m." + MainTable.NAME,
+                                       new String[]{buildMatchQuery(normalizedQuery), normalizedQuery,
+                                                    SearchNormalizer.prefixUpperBound(normalizedQuery)});
+
+            return readSoundObjects(cursor);
+
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "(SEARCH) Failed to search for " + queryString + ": " + e.getMessage());
+        } finally {
+
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        return getSoundCollectionFromPrefixQuery(queryString);
+    }
+
+    /**
+     * Searches for database entries which begin with the given string.
+     * The normalized query is looked up as a range on the search key index.
+     * Is used when full text search is not available.
+     *
+     * @param queryString Query to search for.
+     * @return An ArrayList that holds all SoundObjects that begin with the given string.
+     */
+    public ArrayList<SoundObject> getSoundCollectionFromPrefixQuery(String queryString) {
+
+        String normalizedQuery = SearchNormalizer.normalize(queryString);
+
+        SQLiteDatabase database = this.getReadableDatabase();
 
         Cursor cursor = null;
 
         try {
             // Get a cursor filled with all information from the MAIN_TABLE
             cursor = database.query(MainTable.TABLE_NAME,
-                                    new String[]{MainTable.NAME, MainTable.RESOURCE_ID},
-                                    MainTable.NAME + " LIKE ?",
-                                    new String[]{queryString.toLowerCase() + "%"},
+                                    new String[]{MainTable.NAME, MainTable.RESOURCE_ID, MainTable.SOUND_KEY},
+                                    MainTable.SEARCH_KEY + " >= ? AND " + MainTable.SEARCH_KEY + " < ?",
+                                    new String[]{normalizedQuery, SearchNormalizer.prefixUpperBound(normalizedQuery)},
                                     null,
                                     null,
                                     MainTable.NAME);
 
-            // Check if the cursor is empty or failed to convert the data
-            if (cursor.getCount() != 0) {
+            return readSoundObjects(cursor);
 
-                // Add each item of MAIN_TABLE to soundObjects
-                while (cursor.moveToNext()) {
+        } finally {
 
-                    String name = cursor.getString(cursor.getColumnIndex(MainTable.NAME));
-                    Integer resId = cursor
-                            .getInt(cursor.getColumnIndex(MainTable.RESOURCE_ID));
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Searches for sounds whose name is similar to the given string, even if it is misspelled.
+     * Candidates are the sounds that share the most trigrams with the query, which only reads
+     * the trigram index entries of the query. They are ranked by the number of edits the query
+     * words need to become the beginning of a name word and then by the share of query trigrams they contain.
+     *
+     * @param queryString Query to search for.
+     * @return An ArrayList that holds the similar SoundObjects, best matches first.
+     */
+    public ArrayList<SoundObject> getSoundCollectionFromFuzzyQuery(String queryString) {
+
+        final String normalizedQuery = SearchNormalizer.normalize(queryString);
+        Set<String> queryTrigrams = Trigrams.of(normalizedQuery);
+
+        ArrayList<SoundObject> soundObjects = new ArrayList<>();
+
+        if (queryTrigrams.isEmpty()) {
+            return soundObjects;
+        }
+
+        // Bind the trigrams of the query to the IN clause
+        ArrayList<String> arguments = new ArrayList<>();
+        StringBuilder placeholders = new StringBuilder();
+
+        for (String trigram : queryTrigrams) {
+
+            if (arguments.size() == MAX_FUZZY_QUERY_TRIGRAMS) {
+                break;
+            }
+
+            placeholders.append(arguments.isEmpty() ? "?" : ", ?");
+            arguments.add(trigram);
+        }
+
+        SQLiteDatabase database = this.getReadableDatabase();
+
+        final HashMap<SoundObject, Integer> distances = new HashMap<>();
+        final HashMap<SoundObject, Float> coverages = new HashMap<>();
+
+        Cursor cursor = null;
+
+        try {
+
+            cursor = database.rawQuery("SELECT m." + MainTable.NAME + ", m." + MainTable.RESOURCE_ID + ", m."
+                                           + MainTable.SOUND_KEY + ", COUNT(*) AS shared, m." + MainTable.SEARCH_KEY + " FROM "
+                                           + TrigramTable.TABLE_NAME + " t JOIN " + MainTable.TABLE_NAME + " m ON m."
+                                           + MainTable._ID + " = t." + TrigramTable.SOUND_ID + " WHERE t."
+                                           + TrigramTable.TRIGRAM + " IN (" + placeholders + ") GROUP BY t."
+                                           + TrigramTable.SOUND_ID + " ORDER BY shared DESC LIMIT "
+                                           + MAX_FUZZY_CANDIDATES,
+                                       arguments.toArray(new String[arguments.size()]));
+
+            while (cursor.moveToNext()) {
+
+                float coverage = Trigrams.coverage(cursor.getInt(3), arguments.size());
 
-                    soundObjects.add(new SoundObject(name, resId));
+                // Candidates are ordered by their shared trigrams, so all following ones cover even less
+                if (coverage < MIN_FUZZY_COVERAGE) {
+                    break;
                 }
 
-            } else {
+                String normalizedName = cursor.getString(4);
 
-                Log.d(LOG_TAG, "Failed to convert data");
+                SoundObject soundObject = new SoundObject(cursor.getString(0), cursor.getInt(1), cursor.getString(2));
+
+                soundObjects.add(soundObject);
+                distances.put(soundObject, Trigrams.wordDistance(normalizedQuery, normalizedName));
+                coverages.put(soundObject, coverage);
             }
 
-        } catch (NullPointerException e) {
-            Log.e(LOG_TAG, "Cursor is a NullPointer: " + e.getMessage());
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "(SEARCH) Failed to search fuzzy for " + queryString + ": " + e.getMessage());
         } finally {
 
             if (cursor != null) {
@@ -301,11 +966,62 @@ public class DatabaseHandler extends SQLiteOpenHelper {
             }
         }
 
+        // Re-rank the candidates by their edit distance
+        Collections.sort(soundObjects, new Comparator<SoundObject>() {
+            @Override
+            public int compare(SoundObject first, SoundObject second) {
+
+                int result = distances.get(first).compareTo(distances.get(second));
+
+                if (result == 0) {
+                    result = coverages.get(second).compareTo(coverages.get(first));
+                }
+
+                // Prefer shorter names, they contain less that the user did not ask for
+                if (result == 0) {
+                    result = first.getItemName().length() - second.getItemName().length();
+                }
+
+                return result != 0 ? result : first.getItemName().compareToIgnoreCase(second.getItemName());
+            }
+        });
+
+        return soundObjects;
+    }
+
+    /**
+     * Converts a normalized query into an FTS MATCH expression in which every word is a prefix token.
+     * Normalized queries only consist of lower case letters, digits and spaces, so the
+     * user can not inject FTS operators.
+     *
+     * @param normalizedQuery Query that has been normalized by the SearchNormalizer.
+     * @return The MATCH expression.
+     */
+    private static String buildMatchQuery(String normalizedQuery) {
+
+        return normalizedQuery.replace(" ", "* ") + "*";
+    }
+
+    /**
+     * Reads the name, resource id and sound key columns of every row of a cursor.
+     *
+     * @param cursor Cursor whose first three columns are the name, resource id and sound key.
+     * @return An ArrayList that holds a SoundObject per row.
+     */
+    private static ArrayList<SoundObject> readSoundObjects(Cursor cursor) {
+
+        ArrayList<SoundObject> soundObjects = new ArrayList<>(cursor.getCount());
+
+        while (cursor.moveToNext()) {
+            soundObjects.add(new SoundObject(cursor.getString(0), cursor.getInt(1), cursor.getString(2)));
+        }
+
         return soundObjects;
     }
 
     /**
-     * Inserts a SoundObject into the MAIN table.
+     * Inserts a SoundObject into the FAVORITES table.
+     * Does nothing if the sound is already a favorite.
      *
      * @param soundObject SoundObject to insert.
      */
@@ -314,53 +1030,115 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         // Get a writable instance of the database
         SQLiteDatabase database = this.getWritableDatabase();
 
-        /*
-         * Check if the soundId allready exists in the table
-         * then add it to the table if it does not exist.
-         */
-        if (!verification(database, soundObject)) {
-
-            try {
-
-                // Put the information into a ContentValues object
-                ContentValues contentValues = new ContentValues();
+        // Put the information into a ContentValues object
+        ContentValues contentValues = new ContentValues();
 
-                contentValues.put(FavoritesTable.NAME, soundObject.getItemName());
-                contentValues.put(FavoritesTable.RESOURCE_ID, soundObject.getItemId());
+        contentValues.put(FavoritesTable.NAME, soundObject.getItemName());
+        contentValues.put(FavoritesTable.RESOURCE_ID, soundObject.getItemId());
+        contentValues.put(FavoritesTable.SOUND_KEY, soundObject.getItemKey());
 
-                // Insert the SoundObject into the FAVORITES_TABLE
-                database.insertOrThrow(FavoritesTable.TABLE_NAME, null, contentValues);
+        /*
+         * Insert the SoundObject into the FAVORITES_TABLE.
+         * The unique sound key index rejects duplicates so no check beforehand is needed.
+         */
+        if (database.insertWithOnConflict(FavoritesTable.TABLE_NAME, null, contentValues,
+                                          SQLiteDatabase.CONFLICT_IGNORE) == -1) {
 
-            } catch (SQLException e) {
-                Log.e(LOG_TAG, "(FAVORITES) Failed to insert sound: " + e.getMessage());
-            }
+            Log.d(LOG_TAG, "(FAVORITES) Sound is already a favorite: " + soundObject.getItemName());
         }
     }
 
     /**
-     * Removes a SoundObject from the FAVORITES_TABLE and restarts the Activity.
+     * Removes a SoundObject from the FAVORITES_TABLE.
+     * The displayed lists are updated by the SoundRepository, which calls this method in the background.
      *
-     * @param context     Context of the Activity.
      * @param soundObject SoundObject to be removed.
      */
-    public void removeFavorite(Context context, SoundObject soundObject) {
+    public void removeFavorite(SoundObject soundObject) {
 
         // Get a writable instance of the database
         SQLiteDatabase database = this.getWritableDatabase();
 
         // Remove entry from database table
-        // Only refresh the list if something was deleted
-        if (database.delete(FavoritesTable.TABLE_NAME, FavoritesTable.RESOURCE_ID + "=?",
-                            new String[]{Integer.toString(soundObject.getItemId())}) != 0) {
+        if (database.delete(FavoritesTable.TABLE_NAME, FavoritesTable.SOUND_KEY + "=?",
+                            new String[]{soundObject.getItemKey()}) == 0) {
+
+            Log.d(LOG_TAG, "(FAVORITES) Sound is not a favorite: " + soundObject.getItemName());
+        }
+    }
+
+    /**
+     * Inserts and deletes favorites in one transaction with one compiled statement each,
+     * so a whole batch of changes only costs a single commit.
+     * Favorites that already exist or do not exist anymore are skipped.
+     *
+     * @param added   SoundObjects to insert.
+     * @param removed SoundObjects to delete.
+     * @return True if the changes have been written. If not, none of them has been written.
+     */
+    public boolean applyFavoriteChanges(Collection<SoundObject> added, Collection<SoundObject> removed) {
+
+        SQLiteDatabase database;
+        SQLiteStatement insertStatement;
+        SQLiteStatement deleteStatement;
+
+        try {
+
+            database = this.getWritableDatabase();
+            insertStatement = database.compileStatement(SQL_INSERT_FAVORITE);
+            deleteStatement = database.compileStatement(SQL_DELETE_FAVORITE);
+
+        } catch (SQLException e) {
+
+            Log.e(LOG_TAG, "(FAVORITES) Failed to open the database for the changes: " + e.getMessage());
+            return false;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        boolean written = false;
+
+        database.beginTransaction();
+
+        try {
+
+            for (SoundObject soundObject : added) {
+
+                insertStatement.bindString(1, soundObject.getItemName());
+                insertStatement.bindLong(2, soundObject.getItemId());
+                insertStatement.bindString(3, soundObject.getItemKey());
+                insertStatement.executeInsert();
+            }
+
+            for (SoundObject soundObject : removed) {
 
-            if (context instanceof FavoriteActivity) {
-                ((FavoriteActivity) context).refreshSoundList();
+                deleteStatement.bindString(1, soundObject.getItemKey());
+                deleteStatement.executeUpdateDelete();
             }
+
+            database.setTransactionSuccessful();
+            written = true;
+
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "(FAVORITES) Failed to write the changes: " + e.getMessage());
+        } finally {
+
+            database.endTransaction();
+            insertStatement.close();
+            deleteStatement.close();
+        }
+
+        if (written) {
+            Log.d(LOG_TAG, "(FAVORITES) Wrote " + added.size() + " insertions and " + removed.size()
+                    + " deletions in " + (SystemClock.elapsedRealtime() - start) + " ms");
         }
+
+        return written;
     }
 
     /**
      * Wraps the content of Favorites table into an ArrayList.
+     * The resource ids are resolved from the sound keys in the current build.
+     * Favorites of sounds that are not part of the current build are left out.
      *
      * @return An ArrayList that holds all SoundObjects contained in the FAVORITES table.
      */
@@ -376,7 +1154,7 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         try {
             // Get a cursor filled with all information from the FAVORITES_TABLE
             cursor = database.query(FavoritesTable.TABLE_NAME,
-                                    new String[]{FavoritesTable.NAME, FavoritesTable.RESOURCE_ID},
+                                    new String[]{FavoritesTable.NAME, FavoritesTable.SOUND_KEY},
                                     null,
                                     null,
                                     null,
@@ -390,10 +1168,12 @@ public class DatabaseHandler extends SQLiteOpenHelper {
                 while (cursor.moveToNext()) {
 
                     String name = cursor.getString(cursor.getColumnIndex(FavoritesTable.NAME));
-                    Integer resId = cursor
-                            .getInt(cursor.getColumnIndex(FavoritesTable.RESOURCE_ID));
+                    String key = cursor.getString(cursor.getColumnIndex(FavoritesTable.SOUND_KEY));
+                    Integer resId = SoundKeys.resolve(context, key);
 
-                    soundObjects.add(new SoundObject(name, resId));
+                    if (resId != null) {
+                        soundObjects.add(new SoundObject(name, resId, key));
+                    }
                 }
 
             } else {
@@ -414,119 +1194,200 @@ public class DatabaseHandler extends SQLiteOpenHelper {
     }
 
     /**
-     * When adding sounds to the soundboard and updating the app the resource ids might change.
-     * This method will update the resource ids in the FAVORITES_TABLE.
+     * Returns a source that reads the MAIN table page by page for a PagedSoundList.
+     *
+     * @return The source of the catalog.
+     */
+    public PagedSoundList.Source getCatalogSource() {
+        return new KeysetSource(SQL_SELECT_CATALOG_PAGE, MainTable.NAME, MainTable._ID);
+    }
+
+    /**
+     * Returns a source that reads the FAVORITES table page by page for a PagedSoundList.
+     *
+     * @return The source of the favorites.
      */
-    public void updateFavorites() {
+    public PagedSoundList.Source getFavoritesSource() {
+        return new KeysetSource(SQL_SELECT_FAVORITES_PAGE, "f." + FavoritesTable.NAME, "f." + FavoritesTable._ID);
+    }
 
-        // Get a writable instance of the database
-        SQLiteDatabase database = this.getWritableDatabase();
+    /**
+     * Reads pages of a query that is sorted by a name and a row id column.
+     * A page that follows a known row is selected by a range on both columns,
+     * so SQLite seeks into the name index instead of stepping over all rows before the page.
+     */
+    private class KeysetSource implements PagedSoundList.Source {
+
+        private final String select;
+        private final String orderAscending;
+        private final String orderDescending;
+        private final String afterCondition;
+        private final String beforeCondition;
+
+        /**
+         * Creates a KeysetSource.
+         *
+         * @param select      Query without WHERE and ORDER BY whose columns are the name, resource id, sound key and row id.
+         * @param nameColumn  Column the sounds are sorted by.
+         * @param rowIdColumn Column that makes the order unique.
+         */
+        KeysetSource(String select, String nameColumn, String rowIdColumn) {
 
-        Cursor favoriteContent = null;
-        Cursor updateEntry = null;
+            this.select = select;
 
-        try {
+            orderAscending = " ORDER BY " + nameColumn + ", " + rowIdColumn + " LIMIT ";
+            orderDescending = " ORDER BY " + nameColumn + " DESC, " + rowIdColumn + " DESC LIMIT ";
+
+            // The first comparison bounds the index range, the second skips the rows of the same name
+            afterCondition = " WHERE " + nameColumn + " >= ?1 AND (" + nameColumn + " > ?1 OR "
+                + rowIdColumn + " > ?2)";
+            beforeCondition = " WHERE " + nameColumn + " <= ?1 AND (" + nameColumn + " < ?1 OR "
+                + rowIdColumn + " < ?2)";
+        }
 
-            // Get all data from the FAVORITES_TABLE
-            favoriteContent = database.query(FavoritesTable.TABLE_NAME,
-                                             new String[]{FavoritesTable.NAME,
-                                                          FavoritesTable.RESOURCE_ID},
-                                             null,
-                                             null,
-                                             null,
-                                             null,
-                                             null);
+        @Override
+        public int count() {
 
-            // Check if the cursor is empty or failed to convert the data
-            if (favoriteContent.getCount() == 0) {
+            SQLiteDatabase database = getReadableDatabase();
 
-                Log.d(LOG_TAG, "Cursor is empty or failed to convert data");
-                favoriteContent.close();
-                return;
-            }
+            return (int) DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM (" + select + ")", null);
+        }
+
+        @Override
+        public PagedSoundList.Page loadAt(int offset, int limit) {
+            return readPage(select + orderAscending + limit + " OFFSET " + offset, null, false);
+        }
 
+        @Override
+        public PagedSoundList.Page loadAfter(String name, long rowId, int limit) {
+            return readPage(select + afterCondition + orderAscending + limit,
+                            new String[]{name, String.valueOf(rowId)}, false);
+        }
 
-            while (favoriteContent.moveToNext()) {
+        @Override
+        public PagedSoundList.Page loadBefore(String name, long rowId, int limit) {
+            return readPage(select + beforeCondition + orderDescending + limit,
+                            new String[]{name, String.valueOf(rowId)}, true);
+        }
 
-                // Set a String that will contain the name of the current sound
-                String entryName = favoriteContent
-                        .getString(favoriteContent.getColumnIndex(FavoritesTable.NAME));
+        /**
+         * Runs a page query and reads its rows.
+         *
+         * @param query         Query to run.
+         * @param selectionArgs Arguments of the query. May be null.
+         * @param descending    True if the query returns the rows in descending order.
+         * @return The page in ascending order.
+         */
+        private PagedSoundList.Page readPage(String query, String[] selectionArgs, boolean descending) {
 
-                // Get the entry of MAIN_TABLE where the name of the current favorite sound appears
-                updateEntry = database.rawQuery(
-                        "SELECT * FROM " + MainTable.TABLE_NAME + " WHERE "
-                                + MainTable.NAME + " = '" + entryName + "'",
-                        null);
+            SQLiteDatabase database = getReadableDatabase();
 
-                // You can log the name of the sound that is in the update order right now for debug reasons
-                //Log.d(LOG_TAG, "Currently working on: " + entryName);
+            ArrayList<SoundObject> sounds = new ArrayList<>();
+            ArrayList<String> names = new ArrayList<>();
+            long[] rowIds = new long[0];
 
-                // Check if the cursor is empty or failed to convert the data
-                if (updateEntry.getCount() == 0) {
+            Cursor cursor = null;
 
-                    Log.d(LOG_TAG, "Cursor is empty or failed to convert data");
-                    updateEntry.close();
-                    return;
-                }
+            try {
 
-                // Move to the cursors first position (should only have 1 position)
-                updateEntry.moveToFirst();
+                cursor = database.rawQuery(query, selectionArgs);
 
-                // Check if the resource ids match and update the favorite resource id if necessary
-                if (favoriteContent.getInt(favoriteContent.getColumnIndex(FavoritesTable.RESOURCE_ID))
-                        != updateEntry.getInt(updateEntry.getColumnIndex(MainTable.RESOURCE_ID))) {
+                rowIds = new long[cursor.getCount()];
 
-                    ContentValues contentValues = new ContentValues();
-                    contentValues.put(FavoritesTable.RESOURCE_ID,
-                                      updateEntry.getInt(updateEntry.getColumnIndex(MainTable.RESOURCE_ID)));
+                while (cursor.moveToNext()) {
+
+                    sounds.add(new SoundObject(cursor.getString(0), cursor.getInt(1), cursor.getString(2)));
+                    names.add(cursor.getString(0));
+                    rowIds[cursor.getPosition()] = cursor.getLong(3);
+                }
 
-                    database.update(FavoritesTable.TABLE_NAME,
-                                    contentValues,
-                                    FavoritesTable.NAME + "=?",
-                                    new String[]{entryName});
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Failed to read a page: " + e.getMessage());
+            } finally {
 
-                    // You can log the name of the sound that has been updated for debug reasons
-                    //Log.d(LOG_TAG, "Updated sound: " + entryName);
+                if (cursor != null) {
+                    cursor.close();
                 }
-                // You can log the name of the sound if it is allready up to date for debug reasons
-                //else {
-                //
-                //    Log.d(LOG_TAG, "Allready up to date: " + entryName);
-                //}
             }
-        } catch (NullPointerException e) {
-            Log.e(LOG_TAG, "Cursor is a NullPointer: " + e.getMessage());
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Failed to update favorites: " + e.getMessage());
-        } finally {
 
-            if (favoriteContent != null) {
-                favoriteContent.close();
-            }
+            if (descending) {
+
+                Collections.reverse(sounds);
+                Collections.reverse(names);
 
-            if (updateEntry != null) {
-                updateEntry.close();
+                for (int i = 0, j = rowIds.length - 1; i < j; i++, j--) {
+
+                    long rowId = rowIds[i];
+                    rowIds[i] = rowIds[j];
+                    rowIds[j] = rowId;
+                }
             }
+
+            return new PagedSoundList.Page(sounds, names, rowIds);
         }
     }
 
     /**
-     * Gets called when app is updated and recreates the MAIN_TABLE.
+     * Explains how SQLite executes the queries of this class. Is meant for debugging only.
+     *
+     * @return One block per query that lists the steps of its query plan.
      */
-    public void appUpdate() {
+    public String dumpQueryPlans() {
 
-        try {
+        SQLiteDatabase database = this.getReadableDatabase();
 
-            SQLiteDatabase database = this.getWritableDatabase();
+        String[][] queries = {
+            {"SELECT " + FavoritesTable._ID + " FROM " + FavoritesTable.TABLE_NAME + " WHERE "
+                 + FavoritesTable.SOUND_KEY + " = ?", "audio01"},
+            {"SELECT * FROM " + FavoritesTable.TABLE_NAME + " WHERE "
+                 + FavoritesTable.RESOURCE_ID + " = ?", "0"},
+            {"SELECT * FROM " + FavoritesTable.TABLE_NAME + " ORDER BY " + FavoritesTable.NAME, null},
+            {"SELECT * FROM " + MainTable.TABLE_NAME + " ORDER BY " + MainTable.NAME, null},
+            {SQL_SELECT_CATALOG_PAGE + " WHERE " + MainTable.NAME + " >= ?1 AND (" + MainTable.NAME + " > ?1 OR "
+                 + MainTable._ID + " > 0) ORDER BY " + MainTable.NAME + ", " + MainTable._ID + " LIMIT "
+                 + PagedSoundList.PAGE_SIZE, "a"},
+            {SQL_SELECT_FAVORITES_PAGE + " WHERE f." + FavoritesTable.NAME + " >= ?1 AND (f." + FavoritesTable.NAME
+                 + " > ?1 OR f." + FavoritesTable._ID + " > 0) ORDER BY f." + FavoritesTable.NAME + ", f."
+                 + FavoritesTable._ID + " LIMIT " + PagedSoundList.PAGE_SIZE, "a"},
+            {"SELECT * FROM " + MainTable.TABLE_NAME + " WHERE " + MainTable.SEARCH_KEY + " >= ? AND "
+                 + MainTable.SEARCH_KEY + " < '" + SearchNormalizer.prefixUpperBound("a") + "' ORDER BY "
+                 + MainTable.NAME, "a"},
+            {"SELECT rowid FROM " + SearchTable.TABLE_NAME + " WHERE " + SearchTable.TABLE_NAME
+                 + " MATCH ?", "a*"},
+            {"SELECT " + TrigramTable.SOUND_ID + ", COUNT(*) FROM " + TrigramTable.TABLE_NAME + " WHERE "
+                 + TrigramTable.TRIGRAM + " IN (?) GROUP BY " + TrigramTable.SOUND_ID, " ai"}
+        };
+
+        StringBuilder builder = new StringBuilder();
+
+        for (String[] query : queries) {
+
+            builder.append(query[0]).append('\n');
+
+            Cursor cursor = null;
 
-            database.execSQL("DROP TABLE IF EXISTS " + MainTable.TABLE_NAME);
+            try {
+
+                cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query[0],
+                                           query[1] == null ? null : new String[]{query[1]});
 
-            database.execSQL(SQL_CREATE_MAIN_TABLE);
+                // The last column of the plan holds the readable description of each step
+                while (cursor.moveToNext()) {
+                    builder.append("  ").append(cursor.getString(cursor.getColumnCount() - 1))
+                           .append('\n');
+                }
 
+            } catch (SQLException e) {
+                builder.append("  failed: ").append(e.getMessage()).append('\n');
+            } finally {
 
-        } catch (SQLException e) {
-            Log.e(LOG_TAG, "Failed to update the main table on app update: " + e.getMessage());
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
         }
+
+        return builder.toString();
     }
 
 }
@@ -21,6 +21,12 @@ public abstract class DatabaseSchema {
         public static final String TABLE_NAME = "main_table";
         public static final String NAME = "name";
         public static final String RESOURCE_ID = "resourceID";
+        // Resource entry name of the sound that does not change between builds
+        public static final String SOUND_KEY = "soundKey";
+        public static final String NAME_INDEX = "main_name_index";
+        // Normalized name that is compared with normalized queries, see SearchNormalizer
+        public static final String SEARCH_KEY = "searchKey";
+        public static final String SEARCH_KEY_INDEX = "main_search_key_index";
     }
 
     /**
@@ -31,6 +37,43 @@ public abstract class DatabaseSchema {
 
         public static final String TABLE_NAME = "favorites_table";
         public static final String NAME = "name";
+        // Only kept for databases of version 1. Favorites are identified by SOUND_KEY.
         public static final String RESOURCE_ID = "resourceID";
+        public static final String SOUND_KEY = "soundKey";
+        public static final String SOUND_KEY_INDEX = "favorites_sound_key_index";
+        public static final String RESOURCE_ID_INDEX = "favorites_resource_id_index";
+        public static final String NAME_INDEX = "favorites_name_index";
+    }
+
+    /**
+     * Class to hold the search table structure.
+     * This full text search table indexes the search keys of the MAIN table and is kept in sync by triggers.
+     * Its rowid equals the _ID of the sound in the MAIN table.
+     */
+    public abstract static class SearchTable {
+
+        public static final String TABLE_NAME = "search_table";
+        // Has to match the column of the MAIN table the search table reads its content from
+        public static final String SEARCH_KEY = MainTable.SEARCH_KEY;
+        public static final String INSERT_TRIGGER = "main_search_insert";
+        public static final String DELETE_TRIGGER = "main_search_delete";
+        public static final String BEFORE_UPDATE_TRIGGER = "main_search_before_update";
+        public static final String AFTER_UPDATE_TRIGGER = "main_search_after_update";
+    }
+
+    /**
+     * Class to hold the trigram table structure.
+     * This table contains every distinct trigram of the search key of every sound of the MAIN table
+     * and is used for the fuzzy search.
+     */
+    public abstract static class TrigramTable {
+
+        public static final String TABLE_NAME = "trigram_table";
+        public static final String TRIGRAM = "trigram";
+        // _ID of the sound in the MAIN table
+        public static final String SOUND_ID = "soundId";
+        public static final String SOUND_ID_INDEX = "trigram_sound_id_index";
+        public static final String DELETE_TRIGGER = "main_trigram_delete";
+        public static final String UPDATE_TRIGGER = "main_trigram_update";
     }
 }
@@ -8,7 +8,6 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
-import android.media.MediaPlayer;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
@@ -29,55 +28,136 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
 public class EventHandlerClass {
 
     // Define a tag that is used to log any kind of error or comment
     private static final String LOG_TAG = EventHandlerClass.class.getSimpleName();
 
-    // Declare a MediaPlayer to be used by the app
-    private static MediaPlayer mp;
+    // Declare the PlaybackEngine to be used by the app
+    private static PlaybackEngine engine;
 
     private static final int PERMISSIONS_REQUEST_WRITE_STORAGE = 0;
 
     /**
-     * Creates and starta a MediaPlayer instance to play a sound.
+     * Returns the PlaybackEngine used to play sounds or creates the default engine.
+     * The default engine streams cached PCM data and plays everything else through a SoundPool.
+     *
+     * @return The current PlaybackEngine.
+     */
+    public static synchronized PlaybackEngine getPlaybackEngine() {
+
+        if (engine == null) {
+            engine = new PcmCacheEngine(new SoundPoolEngine());
+        }
+
+        return engine;
+    }
+
+    /**
+     * Exchanges the PlaybackEngine used to play sounds.
+     * The previous engine will be released.
+     *
+     * @param playbackEngine New PlaybackEngine.
+     */
+    public static synchronized void setPlaybackEngine(PlaybackEngine playbackEngine) {
+
+        // Release the previous engine on the playback thread
+        if (engine != null && engine != playbackEngine) {
+            PlaybackDispatcher.getInstance().dispatchRelease(engine);
+        }
+
+        engine = playbackEngine;
+    }
+
+    /**
+     * Queues a sound to be played by the PlaybackDispatcher.
+     *
+     * @param context Context of the current activity.
+     * @param soundId Resource id to play.
+     */
+    public static void playSound(Context context, Integer soundId) {
+
+        // Check if the sound id was set correctly
+        if (soundId != null) {
+            PlaybackDispatcher.getInstance().dispatchPlay(context, soundId);
+        }
+    }
+
+    /**
+     * Plays a sound through the current PlaybackEngine.
+     * Should only be called on the worker thread of the PlaybackDispatcher.
      *
      * @param context Context of the current activity.
      * @param soundId Resource id to play.
      */
     public static void startMediaPlayer(Context context, Integer soundId) {
 
-        try {
+        // Check if the sound id was set correctly
+        if (soundId != null) {
+            getPlaybackEngine().play(context.getApplicationContext(), soundId);
 
-            // Check if the sound id was set correctly
-            if (soundId != null) {
+            // Remember the sound to preload it on the next cold start
+            RecentSounds.record(context, soundId);
+        }
+    }
 
-                // Check if the MediaPlayer maybe is in use
-                // If so the MediaPlayer will be reset
-                if (mp != null) {
-                    mp.reset();
-                }
+    /**
+     * Queues the preparation of a list of sounds in the current PlaybackEngine.
+     *
+     * @param context      Context of the current activity.
+     * @param soundObjects SoundObjects to preload.
+     */
+    public static void preloadSounds(Context context, List<SoundObject> soundObjects) {
 
-                // Create and start the MediaPlayer on the given sound id
-                mp = MediaPlayer.create(context, soundId);
-                mp.start();
-            }
-        } catch (IllegalStateException e) {
-            Log.e(LOG_TAG, "MediaPlayer is in an invalid state for start: " + e.getMessage());
+        PlaybackDispatcher.getInstance().dispatchPreload(context, soundObjects);
+    }
+
+    /**
+     * Decodes the first favorites into the PCM cache if the current engine supports it.
+     *
+     * @param context Context of the current activity.
+     */
+    public static void pinFavorites(Context context) {
+
+        PlaybackEngine playbackEngine = getPlaybackEngine();
+
+        if (playbackEngine instanceof PcmCacheEngine) {
+            ((PcmCacheEngine) playbackEngine)
+                .pinFavorites(context, PcmCacheEngine.DEFAULT_PINNED_FAVORITES);
         }
     }
 
     /**
-     * Releases all data and resources from the MediaPlayer.
+     * Describes the playback queue and the current PlaybackEngine with all engines it wraps.
+     *
+     * @return The counters of the playback path for the debug screen.
      */
-    public static void releaseMediaPlayer() {
+    public static String dumpPlayback() {
+
+        StringBuilder dump = new StringBuilder(PlaybackDispatcher.getInstance().dump());
+        PlaybackEngine playbackEngine = getPlaybackEngine();
 
-        if (mp != null) {
+        if (playbackEngine instanceof PcmCacheEngine) {
 
-            mp.release();
-            mp = null;
+            dump.append(((PcmCacheEngine) playbackEngine).dump());
+            playbackEngine = ((PcmCacheEngine) playbackEngine).getDelegate();
         }
+
+        if (playbackEngine instanceof SoundPoolEngine) {
+            dump.append(((SoundPoolEngine) playbackEngine).dump());
+        }
+
+        return dump.toString();
+    }
+
+    /**
+     * Queues the release of all data and resources from the PlaybackEngine.
+     */
+    public static void releaseMediaPlayer() {
+
+        PlaybackDispatcher.getInstance().dispatchRelease(getPlaybackEngine());
     }
 
     /**
@@ -332,14 +412,14 @@ public class EventHandlerClass {
                 // Add sound to favorites / Remove sound from favorites
                 if (item.getItemId() == R.id.action_favorite) {
 
-                    DatabaseHandler databaseHandler = DatabaseHandler
-                        .getInstance(context.getApplicationContext());
+                    SoundRepository soundRepository = SoundRepository.getInstance(context);
 
                     // Identify the current activity
+                    // The repository updates the displayed lists and writes the database in the background
                     if (context instanceof FavoriteActivity) {
-                        databaseHandler.removeFavorite(context, soundObject);
+                        soundRepository.removeFavorite(soundObject);
                     } else {
-                        databaseHandler.addFavorite(soundObject);
+                        soundRepository.addFavorite(soundObject);
                     }
                 }
 
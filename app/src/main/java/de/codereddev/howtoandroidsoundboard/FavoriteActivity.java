@@ -1,10 +1,6 @@
 package de.codereddev.howtoandroidsoundboard;
 
 import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -14,8 +10,8 @@ import android.view.MenuItem;
 
 import java.util.ArrayList;
 
-public class FavoriteActivity
-    extends AppCompatActivity implements LoaderManager.LoaderCallbacks<ArrayList<SoundObject>> {
+public class FavoriteActivity extends AppCompatActivity
+    implements SoundListStore.Subscriber, SoundRepository.Observer {
 
     // Define a tag that is used to log any kind of error or comment
     private static final String LOG_TAG = FavoriteActivity.class.getSimpleName();
@@ -32,6 +28,12 @@ public class FavoriteActivity
     private SoundboardRecyclerAdapter mRecyclerAdapter;
     private RecyclerView.LayoutManager mLayoutManager;
 
+    // Declare a SoundPrefetcher that prepares the sounds which are about to be displayed
+    private SoundPrefetcher mSoundPrefetcher;
+
+    // Declare a SoundListStore that loads the favorites and keeps them across configuration changes
+    private SoundListStore mSoundListStore;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -55,11 +57,21 @@ public class FavoriteActivity
         // Initialize recycler adapter
         mRecyclerAdapter = new SoundboardRecyclerAdapter(this, mSoundList);
 
+        // Reuse the sound items of the other activity instead of inflating new ones
+        mRecyclerView.setRecycledViewPool(SoundboardRecyclerAdapter.getSharedViewPool());
+
         // Set the RecyclerView.Adapter
         mRecyclerView.setAdapter(mRecyclerAdapter);
 
-        // Calls a method that adds data from a database to the soundList
-        getSupportLoaderManager().initLoader(R.id.favorites_soundlist_loader_id, null, this);
+        // Prepare the visible sounds and the next rows in the background
+        mSoundPrefetcher = new SoundPrefetcher(this, mRecyclerView);
+
+        // Apply the changes of the favorites to the displayed list
+        SoundRepository.getInstance(this).addObserver(this);
+
+        // Display the favorites, a recreated activity receives the list that has been loaded before
+        mSoundListStore = SoundListStore.getInstance(this);
+        mSoundListStore.subscribe(SoundListStore.FAVORITES, this);
     }
 
     // Create/Inflate options menu
@@ -88,39 +100,77 @@ public class FavoriteActivity
     protected void onDestroy() {
         super.onDestroy();
 
-        EventHandlerClass.releaseMediaPlayer();
+        // The pooled items must not outlive the activity they were inflated in
+        // The items of the soundboard stay in the pool, it is still displayed below this activity
+        SoundboardRecyclerAdapter.clearSharedViewPool(this);
+
+        SoundRepository.getInstance(this).removeObserver(this);
+
+        mSoundListStore.unsubscribe(SoundListStore.FAVORITES, this);
+
+        // Keep the favorites for the next instance unless the activity is closed for good
+        if (isFinishing()) {
+            mSoundListStore.clear(SoundListStore.FAVORITES);
+        }
+
+        // The engine is shared with the soundboard below, which releases it when it is destroyed itself
     }
 
     /**
-     * Refreshes the displayed list by restarting the loader that holds references to the list.
+     * Displays the favorites again. They are only read again if they have changed since they have been displayed.
      */
     public void refreshSoundList() {
 
-        getSupportLoaderManager().restartLoader(R.id.favorites_soundlist_loader_id, null, this);
+        mSoundListStore.refresh(SoundListStore.FAVORITES);
+    }
+
+    @Override
+    public void onFavoriteAdded(SoundObject soundObject, int position) {
+
+        if (mRecyclerAdapter.getPagedSounds() == null) {
+            return;
+        }
+
+        mRecyclerAdapter.insertPagedSound(createFavoritesList(), position);
     }
 
-    // Gets the entries from the database and loads the data into the RecyclerView.
+    @Override
+    public void onFavoriteRemoved(SoundObject soundObject, int position) {
+
+        if (mRecyclerAdapter.getPagedSounds() == null) {
+            return;
+        }
+
+        mRecyclerAdapter.removePagedSound(createFavoritesList(), position);
+    }
 
-    @NonNull
     @Override
-    public Loader<ArrayList<SoundObject>> onCreateLoader(int id, @Nullable Bundle args) {
-        return new SoundListLoader(getApplicationContext()) {
-
-            @Override
-            public ArrayList<SoundObject> loadInBackground() {
-                return DatabaseHandler.getInstance(FavoriteActivity.this).getFavorites();
-            }
-        };
+    public void onCatalogChanged() {
+        // The SoundListStore loads the changed favorites and delivers them to onSoundListChanged()
     }
 
     @Override
-    public void onLoadFinished(@NonNull Loader<ArrayList<SoundObject>> loader, ArrayList<SoundObject> data) {
+    public void onFavoritesLoaded() {
+        // The list is read from the favorites snapshot, so it has been loaded already
+    }
 
-        mRecyclerAdapter.swapData(data);
+    /**
+     * Creates a list of the current favorites snapshot.
+     * The pages the user is looking at are read right away because they come from memory.
+     * The list is cached by the SoundListStore, so a recreated activity displays it as well.
+     *
+     * @return The list of the favorites.
+     */
+    private PagedSoundList createFavoritesList() {
+        return mSoundListStore.createFavorites(((GridLayoutManager) mLayoutManager).findFirstVisibleItemPosition());
     }
 
     @Override
-    public void onLoaderReset(@NonNull Loader<ArrayList<SoundObject>> loader) {
-        mRecyclerAdapter.swapData(new ArrayList<SoundObject>());
+    public void onSoundListChanged(PagedSoundList list) {
+
+        mRecyclerAdapter.swapPagedData(list);
+
+        // Decode the sounds that are about to be displayed ahead of time
+        mSoundPrefetcher.refresh();
     }
 }
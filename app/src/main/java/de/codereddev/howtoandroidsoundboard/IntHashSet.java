@@ -0,0 +1,219 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints that stores its values in a single int array without boxing them.
+ * Uses open addressing with linear probing, so a lookup is one hash and usually a single array read.
+ * Is not thread safe.
+ */
+public class IntHashSet {
+
+    // Marks a free slot. The value itself is tracked by containsEmptyValue.
+    private static final int EMPTY = 0;
+
+    // Define the smallest capacity and the share of slots that may be used before the table grows
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] slots;
+    private int size = 0;
+    private boolean containsEmptyValue = false;
+
+    public IntHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an IntHashSet that holds the given number of values without growing.
+     *
+     * @param expectedSize Expected number of values.
+     */
+    public IntHashSet(int expectedSize) {
+        slots = new int[capacityFor(expectedSize)];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value Value to add.
+     * @return True if the value has not been part of the set before.
+     */
+    public boolean add(int value) {
+
+        if (value == EMPTY) {
+
+            boolean added = !containsEmptyValue;
+            containsEmptyValue = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+
+        int mask = slots.length - 1;
+
+        for (int index = hash(value) & mask; ; index = (index + 1) & mask) {
+
+            if (slots[index] == value) {
+                return false;
+            }
+
+            if (slots[index] == EMPTY) {
+
+                slots[index] = value;
+                size++;
+
+                if (size > slots.length * LOAD_FACTOR) {
+                    resize(slots.length * 2);
+                }
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value Value to remove.
+     * @return True if the value has been part of the set.
+     */
+    public boolean remove(int value) {
+
+        if (value == EMPTY) {
+
+            boolean removed = containsEmptyValue;
+            containsEmptyValue = false;
+            size -= removed ? 1 : 0;
+            return removed;
+        }
+
+        int mask = slots.length - 1;
+
+        for (int index = hash(value) & mask; ; index = (index + 1) & mask) {
+
+            if (slots[index] == EMPTY) {
+                return false;
+            }
+
+            if (slots[index] == value) {
+
+                slots[index] = EMPTY;
+                size--;
+                closeGap(index);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks if a value is part of the set. Does not allocate.
+     *
+     * @param value Value to look up.
+     * @return True if the value is part of the set.
+     */
+    public boolean contains(int value) {
+
+        if (value == EMPTY) {
+            return containsEmptyValue;
+        }
+
+        int mask = slots.length - 1;
+
+        for (int index = hash(value) & mask; ; index = (index + 1) & mask) {
+
+            if (slots[index] == value) {
+                return true;
+            }
+
+            if (slots[index] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsEmptyValue = false;
+    }
+
+    /**
+     * @return The number of bytes used by the slots.
+     */
+    public int getMemoryFootprint() {
+        return slots.length * 4;
+    }
+
+    /**
+     * Moves the values that follow a freed slot back, so no lookup stops at the gap too early.
+     *
+     * @param gap Index of the freed slot.
+     */
+    private void closeGap(int gap) {
+
+        int mask = slots.length - 1;
+
+        for (int index = (gap + 1) & mask; slots[index] != EMPTY; index = (index + 1) & mask) {
+
+            int value = slots[index];
+            int home = hash(value) & mask;
+
+            // The value may fill the gap if its home slot does not lie between the gap and its current slot
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+
+                slots[gap] = value;
+                slots[index] = EMPTY;
+                gap = index;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+
+        int[] oldSlots = slots;
+        slots = new int[capacity];
+
+        int mask = capacity - 1;
+
+        for (int value : oldSlots) {
+
+            if (value == EMPTY) {
+                continue;
+            }
+
+            int index = hash(value) & mask;
+
+            while (slots[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+
+            slots[index] = value;
+        }
+    }
+
+    /**
+     * Spreads the bits of a value, resource ids only differ in their lowest bits.
+     * Is package-private, so tests can pick values that collide.
+     */
+    static int hash(int value) {
+
+        int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int capacityFor(int expectedSize) {
+
+        int capacity = MIN_CAPACITY;
+
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity *= 2;
+        }
+
+        return capacity;
+    }
+}
@@ -0,0 +1,112 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * Debug screen that shows the tap to audio latency histograms collected by the LatencyTracer
+ * together with the counters of the playback queue and the voices.
+ * The dump can be exported to compare the timings between releases.
+ * The warmup can be switched off for the next cold starts to compare the first tap with and without it.
+ */
+public class LatencyDebugActivity extends AppCompatActivity {
+
+    // Declare a mToolbar to use instead of the system standard mToolbar
+    private Toolbar mToolbar;
+
+    // Declare a TextView that displays the dump
+    private TextView mLatencyTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_latency_debug);
+
+        // Assign mToolbar to the Toolbar item declared in activity_latency_debug.xml
+        mToolbar = (Toolbar) findViewById(R.id.latency_toolbar);
+
+        // Set mToolbar as new action bar
+        setSupportActionBar(mToolbar);
+
+        mLatencyTextView = (TextView) findViewById(R.id.latencyTextView);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        refreshDump();
+    }
+
+    // Create/Inflate options menu
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+
+        // Inflate the layout
+        getMenuInflater().inflate(R.menu.toolbar_menu_latency, menu);
+
+        // Show if the warmup runs on the next cold start
+        menu.findItem(R.id.action_latency_warmup).setChecked(AudioWarmup.isEnabled(this));
+
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    // Handle 'onClicks' in the options menu
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+
+        switch (item.getItemId()) {
+
+            case R.id.action_latency_export:
+                exportDump();
+                break;
+            case R.id.action_latency_reset:
+                LatencyTracer.getInstance().reset();
+                refreshDump();
+                break;
+            case R.id.action_latency_warmup:
+                // Takes effect on the next cold start, the first tap of it is saved in the other group
+                item.setChecked(!item.isChecked());
+                AudioWarmup.setEnabled(this, item.isChecked());
+                refreshDump();
+                break;
+            default:
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Displays the current dump of the LatencyTracer.
+     */
+    private void refreshDump() {
+
+        mLatencyTextView.setText(AudioWarmup.dump(this) + "\n" + LatencyTracer.getInstance().dump(this)
+                                 + "\n" + EventHandlerClass.dumpPlayback()
+                                 + "\n" + SoundSearchIndex.getInstance().dump());
+    }
+
+    /**
+     * Shares the current dump and the query plans of the database as plain text
+     * and writes the dump into the log.
+     */
+    private void exportDump() {
+
+        LatencyTracer.getInstance().log(this);
+
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.putExtra(Intent.EXTRA_TEXT,
+                        AudioWarmup.dump(this) + "\n" + LatencyTracer.getInstance().dump(this)
+                        + "\n" + EventHandlerClass.dumpPlayback()
+                        + "\n" + SoundSearchIndex.getInstance().dump()
+                        + "\n" + DatabaseHandler.getInstance(this).dumpQueryPlans());
+        intent.setType("text/plain");
+
+        startActivity(Intent.createChooser(intent, getString(R.string.export_latency_title)));
+    }
+}
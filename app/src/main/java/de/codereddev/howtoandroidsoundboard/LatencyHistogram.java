@@ -0,0 +1,125 @@
+package de.codereddev.howtoandroidsoundboard;
+
+/**
+ * Counts latency samples in fixed buckets to calculate percentiles without storing every sample.
+ * Buckets are 1 ms wide below 100 ms, 10 ms wide below 1 s and 100 ms wide below 10 s.
+ * Samples above 10 s are counted in an overflow bucket.
+ */
+public class LatencyHistogram {
+
+    private static final int FINE_LIMIT_MS = 100;
+    private static final int MEDIUM_LIMIT_MS = 1000;
+    private static final int COARSE_LIMIT_MS = 10000;
+
+    private static final int FINE_BUCKETS = FINE_LIMIT_MS;
+    private static final int MEDIUM_BUCKETS = (MEDIUM_LIMIT_MS - FINE_LIMIT_MS) / 10;
+    private static final int COARSE_BUCKETS = (COARSE_LIMIT_MS - MEDIUM_LIMIT_MS) / 100;
+    private static final int BUCKET_COUNT = FINE_BUCKETS + MEDIUM_BUCKETS + COARSE_BUCKETS + 1;
+
+    private final int[] buckets = new int[BUCKET_COUNT];
+
+    private long count = 0;
+    private long maxMs = 0;
+
+    /**
+     * Adds a sample to the histogram.
+     *
+     * @param latencyMs Latency in milliseconds.
+     */
+    public synchronized void record(long latencyMs) {
+
+        latencyMs = Math.max(0, latencyMs);
+
+        buckets[bucketOf(latencyMs)]++;
+        count++;
+        maxMs = Math.max(maxMs, latencyMs);
+    }
+
+    /**
+     * Calculates a percentile of all recorded samples.
+     *
+     * @param percentile Percentile between 0 and 100.
+     * @return The upper bound of the bucket that holds the percentile in milliseconds
+     *         or 0 if there are no samples.
+     */
+    public synchronized long getPercentile(double percentile) {
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100d);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+
+            seen += buckets[i];
+
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBoundOf(i), maxMs);
+            }
+        }
+
+        return maxMs;
+    }
+
+    /**
+     * @return The number of recorded samples.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The highest recorded sample in milliseconds.
+     */
+    public synchronized long getMax() {
+        return maxMs;
+    }
+
+    /**
+     * Calculates the bucket a sample belongs to.
+     *
+     * @param latencyMs Latency in milliseconds.
+     * @return Index of the bucket.
+     */
+    private static int bucketOf(long latencyMs) {
+
+        if (latencyMs < FINE_LIMIT_MS) {
+            return (int) latencyMs;
+        }
+
+        if (latencyMs < MEDIUM_LIMIT_MS) {
+            return FINE_BUCKETS + (int) (latencyMs - FINE_LIMIT_MS) / 10;
+        }
+
+        if (latencyMs < COARSE_LIMIT_MS) {
+            return FINE_BUCKETS + MEDIUM_BUCKETS + (int) (latencyMs - MEDIUM_LIMIT_MS) / 100;
+        }
+
+        return BUCKET_COUNT - 1;
+    }
+
+    /**
+     * Calculates the highest latency a bucket can hold.
+     *
+     * @param bucket Index of the bucket.
+     * @return Upper bound of the bucket in milliseconds.
+     */
+    private static long upperBoundOf(int bucket) {
+
+        if (bucket < FINE_BUCKETS) {
+            return bucket;
+        }
+
+        if (bucket < FINE_BUCKETS + MEDIUM_BUCKETS) {
+            return FINE_LIMIT_MS + (bucket - FINE_BUCKETS + 1) * 10 - 1;
+        }
+
+        if (bucket < BUCKET_COUNT - 1) {
+            return MEDIUM_LIMIT_MS + (bucket - FINE_BUCKETS - MEDIUM_BUCKETS + 1) * 100 - 1;
+        }
+
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,236 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * Traces the time from a tap on a sound button to the start of its audio.
+ * Every stage of the playback is measured relative to the tap and aggregated into
+ * one LatencyHistogram per sound and stage.
+ * Is designed as a Singleton to collect the timings of the whole app.
+ */
+public class LatencyTracer {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = LatencyTracer.class.getSimpleName();
+
+    /**
+     * The stages a sound passes from the tap to the audio output.
+     */
+    public enum Stage {
+        // The user tapped the sound button
+        CLICK,
+        // The PlaybackDispatcher started to work on the tap
+        DISPATCH,
+        // The player has the sound ready to start
+        PREPARE,
+        // The player has been started
+        START,
+        // The first frame has been rendered by the audio output
+        FIRST_FRAME
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    // Define the time after which a trace that has not been started is given up, the tap might have been dropped
+    public static final long MAX_TRACE_MS = 1000;
+
+    private static LatencyTracer instance = null;
+
+    // Maps a sound id to the times of its current trace. A value of 0 means not reached yet.
+    private final SparseArray<long[]> openTraces = new SparseArray<>();
+
+    // Maps a sound id to one histogram per stage
+    private final SparseArray<LatencyHistogram[]> histograms = new SparseArray<>();
+
+    // Holds the histograms of all sounds together
+    private final LatencyHistogram[] totalHistograms = createHistograms();
+
+    // Latency of the first started sound in this process or -1 if no sound has been started yet
+    private long firstStartLatencyMs = -1;
+
+    private LatencyTracer() {
+    }
+
+    /**
+     * Returns the instance of the tracer or if necessary creates it.
+     *
+     * @return The current instance of the tracer.
+     */
+    public static synchronized LatencyTracer getInstance() {
+
+        if (instance == null) {
+            instance = new LatencyTracer();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Starts a new trace for a sound unless the previous tap on the sound is still being traced.
+     * The PlaybackDispatcher coalesces a repeated tap while the previous one waits to be played or within
+     * its COALESCE_WINDOW_MS, so replacing the open trace in that case would attribute the stages of the tap
+     * that is actually played to a later click. Every other tap is played and gets a trace of its own.
+     * A trace that has not been started is given up after MAX_TRACE_MS.
+     *
+     * @param soundId Resource id of the tapped sound.
+     */
+    public synchronized void begin(int soundId) {
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        long[] times = openTraces.get(soundId);
+
+        if (times == null) {
+
+            times = new long[STAGES.length];
+            openTraces.put(soundId, times);
+
+        } else {
+
+            long ageMs = (now - times[Stage.CLICK.ordinal()]) / 1000000;
+            boolean waiting = times[Stage.START.ordinal()] == 0 && ageMs < MAX_TRACE_MS;
+
+            if (waiting || ageMs < PlaybackDispatcher.COALESCE_WINDOW_MS) {
+                return;
+            }
+        }
+
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 0;
+        }
+
+        times[Stage.CLICK.ordinal()] = now;
+    }
+
+    /**
+     * Records that a sound reached a stage. Does nothing if the sound has no open trace.
+     * Only the first time a stage is reached per trace counts.
+     *
+     * @param soundId Resource id of the sound.
+     * @param stage   Stage the sound reached.
+     */
+    public synchronized void mark(int soundId, Stage stage) {
+
+        long[] times = openTraces.get(soundId);
+
+        if (times == null || times[Stage.CLICK.ordinal()] == 0 || times[stage.ordinal()] != 0) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        times[stage.ordinal()] = now;
+
+        long latencyMs = (now - times[Stage.CLICK.ordinal()]) / 1000000;
+
+        LatencyHistogram[] soundHistograms = histograms.get(soundId);
+
+        if (soundHistograms == null) {
+            soundHistograms = createHistograms();
+            histograms.put(soundId, soundHistograms);
+        }
+
+        soundHistograms[stage.ordinal()].record(latencyMs);
+        totalHistograms[stage.ordinal()].record(latencyMs);
+
+        if (stage == Stage.START && firstStartLatencyMs < 0) {
+            firstStartLatencyMs = latencyMs;
+        }
+    }
+
+    /**
+     * @return The tap to start latency of the first sound in this process or -1 if there was none.
+     */
+    public synchronized long getFirstStartLatencyMs() {
+        return firstStartLatencyMs;
+    }
+
+    /**
+     * Creates a text dump of all histograms that can be compared between releases.
+     *
+     * @param context Context to resolve the names of the sounds.
+     * @return One line per sound and stage with count, p50, p95, p99 and max in milliseconds.
+     */
+    public synchronized String dump(Context context) {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("sound\tstage\tcount\tp50\tp95\tp99\tmax\n");
+
+        appendHistograms(builder, "all", totalHistograms);
+
+        for (int i = 0; i < histograms.size(); i++) {
+
+            String name;
+
+            try {
+                name = context.getResources().getResourceEntryName(histograms.keyAt(i));
+            } catch (Resources.NotFoundException e) {
+                name = Integer.toString(histograms.keyAt(i));
+            }
+
+            appendHistograms(builder, name, histograms.valueAt(i));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Writes the dump into the log.
+     *
+     * @param context Context to resolve the names of the sounds.
+     */
+    public void log(Context context) {
+        Log.i(LOG_TAG, "Tap to audio latency in ms:\n" + dump(context));
+    }
+
+    /**
+     * Drops all recorded timings.
+     */
+    public synchronized void reset() {
+
+        openTraces.clear();
+        histograms.clear();
+
+        for (int i = 0; i < totalHistograms.length; i++) {
+            totalHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Appends every stage of a sound that has samples to the dump.
+     */
+    private static void appendHistograms(StringBuilder builder, String name,
+                                         LatencyHistogram[] stageHistograms) {
+
+        // The click is the reference point of every trace so it has no latency of its own
+        for (int i = Stage.DISPATCH.ordinal(); i < stageHistograms.length; i++) {
+
+            LatencyHistogram histogram = stageHistograms[i];
+
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+
+            builder.append(name).append('\t')
+                   .append(STAGES[i].name()).append('\t')
+                   .append(histogram.getCount()).append('\t')
+                   .append(histogram.getPercentile(50)).append('\t')
+                   .append(histogram.getPercentile(95)).append('\t')
+                   .append(histogram.getPercentile(99)).append('\t')
+                   .append(histogram.getMax()).append('\n');
+        }
+    }
+
+    private static LatencyHistogram[] createHistograms() {
+
+        LatencyHistogram[] stageHistograms = new LatencyHistogram[STAGES.length];
+
+        for (int i = 0; i < stageHistograms.length; i++) {
+            stageHistograms[i] = new LatencyHistogram();
+        }
+
+        return stageHistograms;
+    }
+}
@@ -0,0 +1,421 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A sorted list of sounds that is read from the database in pages of PAGE_SIZE sounds.
+ * Only the pages around the last accessed position are kept in memory, so the memory
+ * does not grow with the size of the catalog.
+ * A page next to a loaded page is read by keyset on the name and the row id, so its query
+ * starts right at the first row of the page. Only a page without loaded neighbours,
+ * e.g. after a fast scroll, has to be sought by its offset.
+ * Sounds that are not loaded yet are returned as null and can be displayed as placeholders.
+ * Must be used from the main thread.
+ */
+public class PagedSoundList {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = PagedSoundList.class.getSimpleName();
+
+    // Define the number of sounds per page. Is a multiple of the number of columns of the grid.
+    public static final int PAGE_SIZE = 60;
+
+    // Define the number of pages that are loaded ahead of and behind the accessed page
+    public static final int PAGES_AHEAD = 2;
+
+    // Define the distance from the accessed page at which pages are evicted
+    public static final int EVICT_DISTANCE = PAGES_AHEAD + 2;
+
+    // Reads the pages of all lists one after another
+    private static final ExecutorService PAGE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Reads pages of sounds that are sorted by name and row id. Is called on the page executor.
+     */
+    public interface Source {
+
+        /**
+         * @return The number of sounds.
+         */
+        int count();
+
+        /**
+         * Reads the sounds from a position on.
+         *
+         * @param offset Position of the first sound.
+         * @param limit  Maximum number of sounds.
+         * @return The page.
+         */
+        Page loadAt(int offset, int limit);
+
+        /**
+         * Reads the sounds that follow a sound.
+         *
+         * @param name  Name of the sound.
+         * @param rowId Row id of the sound.
+         * @param limit Maximum number of sounds.
+         * @return The page.
+         */
+        Page loadAfter(String name, long rowId, int limit);
+
+        /**
+         * Reads the sounds that precede a sound.
+         *
+         * @param name  Name of the sound.
+         * @param rowId Row id of the sound.
+         * @param limit Maximum number of sounds.
+         * @return The page in ascending order.
+         */
+        Page loadBefore(String name, long rowId, int limit);
+    }
+
+    /**
+     * Gets notified on the main thread when sounds have been loaded.
+     */
+    public interface Listener {
+
+        /**
+         * Gets called when a range of sounds has been loaded.
+         *
+         * @param positionStart Position of the first loaded sound.
+         * @param itemCount     Number of loaded sounds.
+         */
+        void onRangeLoaded(int positionStart, int itemCount);
+    }
+
+    /**
+     * Sounds of one page together with the keys of its first and its last row.
+     */
+    public static class Page {
+
+        private final ArrayList<SoundObject> sounds;
+        private final String firstName;
+        private final long firstRowId;
+        private final String lastName;
+        private final long lastRowId;
+
+        /**
+         * Creates a Page.
+         *
+         * @param sounds Sounds of the page in ascending order.
+         * @param names  Names of the sounds as stored in the sort column.
+         * @param rowIds Row ids of the sounds.
+         */
+        public Page(ArrayList<SoundObject> sounds, ArrayList<String> names, long[] rowIds) {
+
+            this.sounds = sounds;
+
+            if (sounds.isEmpty()) {
+
+                firstName = lastName = null;
+                firstRowId = lastRowId = 0;
+
+            } else {
+
+                firstName = names.get(0);
+                firstRowId = rowIds[0];
+                lastName = names.get(sounds.size() - 1);
+                lastRowId = rowIds[sounds.size() - 1];
+            }
+        }
+
+        public int size() {
+            return sounds.size();
+        }
+
+        public ArrayList<SoundObject> getSounds() {
+            return sounds;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public long getFirstRowId() {
+            return firstRowId;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public long getLastRowId() {
+            return lastRowId;
+        }
+    }
+
+    private final Source source;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private int size = 0;
+
+    // Holds the loaded pages by their index
+    private final SparseArray<Page> pages = new SparseArray<>();
+
+    // Index of the page that has been accessed last
+    private int accessedPage = 0;
+
+    // Index of the page that is being loaded, only one page is loaded at a time
+    private int loadingPage = -1;
+
+    // Counters that describe the work of the list
+    private int keysetLoads = 0;
+    private int offsetLoads = 0;
+    private int evictions = 0;
+
+    private Listener listener = null;
+
+    private boolean released = false;
+
+    /**
+     * Creates an empty PagedSoundList. Call loadInitial() before it is displayed.
+     *
+     * @param source Reads the pages.
+     */
+    public PagedSoundList(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Counts the sounds and reads the first page, so the beginning of the list can be displayed right away.
+     * Is meant to be called on a background thread before the list is handed to the main thread.
+     */
+    public void loadInitial() {
+
+        size = source.count();
+
+        if (size > 0) {
+
+            pages.put(0, source.loadAt(0, PAGE_SIZE));
+            offsetLoads++;
+        }
+    }
+
+    /**
+     * Counts the sounds and reads all pages within PAGES_AHEAD of a position.
+     * Is meant for sources that read from memory, e.g. to replace a displayed list after a change
+     * without showing placeholders where the user is looking.
+     *
+     * @param position Position the user is looking at.
+     */
+    public void loadInitial(int position) {
+
+        size = source.count();
+        accessedPage = Math.max(0, position) / PAGE_SIZE;
+
+        int lastPage = (size - 1) / PAGE_SIZE;
+
+        for (int pageIndex = accessedPage - PAGES_AHEAD; pageIndex <= accessedPage + PAGES_AHEAD; pageIndex++) {
+
+            if (pageIndex >= 0 && pageIndex <= lastPage) {
+
+                pages.put(pageIndex, source.loadAt(pageIndex * PAGE_SIZE, PAGE_SIZE));
+                offsetLoads++;
+            }
+        }
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops loading pages. Should be called once the list is not displayed anymore.
+     */
+    public void release() {
+
+        released = true;
+        listener = null;
+        pages.clear();
+    }
+
+    /**
+     * @return True if the list has been released and can not be displayed anymore.
+     */
+    public boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * @return The number of sounds.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the sound at a position and loads the pages around it.
+     *
+     * @param position Position of the sound.
+     * @return The sound or null if its page has not been loaded yet.
+     */
+    @Nullable
+    public SoundObject get(int position) {
+
+        int pageIndex = position / PAGE_SIZE;
+
+        if (pageIndex != accessedPage) {
+
+            accessedPage = pageIndex;
+            evictDistantPages();
+        }
+
+        loadAround();
+
+        return peek(position);
+    }
+
+    /**
+     * Returns the sound at a position without loading anything.
+     *
+     * @param position Position of the sound.
+     * @return The sound or null if its page has not been loaded yet.
+     */
+    @Nullable
+    public SoundObject peek(int position) {
+
+        Page page = pages.get(position / PAGE_SIZE);
+        int index = position % PAGE_SIZE;
+
+        // The list might have shrunk since it has been counted
+        if (page == null || index >= page.sounds.size()) {
+            return null;
+        }
+
+        return page.sounds.get(index);
+    }
+
+    /**
+     * @return The number of pages that are held in memory.
+     */
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Writes the counters into the log.
+     */
+    public void log() {
+
+        Log.d(LOG_TAG, "Pages loaded by keyset: " + keysetLoads + ", by offset: " + offsetLoads
+                + ", evicted: " + evictions + ", held: " + pages.size());
+    }
+
+    /**
+     * Loads the missing page closest to the accessed one that is within PAGES_AHEAD.
+     * Pages are loaded one after another, so every page after the first has a loaded neighbour to start from.
+     */
+    private void loadAround() {
+
+        if (released || loadingPage != -1) {
+            return;
+        }
+
+        int lastPage = (size - 1) / PAGE_SIZE;
+
+        for (int distance = 0; distance <= PAGES_AHEAD; distance++) {
+
+            // Look ahead before behind because the user usually scrolls down
+            if (loadPage(accessedPage + distance, lastPage) || loadPage(accessedPage - distance, lastPage)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts to load a page unless it is loaded already.
+     *
+     * @param pageIndex Index of the page.
+     * @param lastPage  Index of the last page.
+     * @return True if the page is being loaded.
+     */
+    private boolean loadPage(final int pageIndex, int lastPage) {
+
+        if (pageIndex < 0 || pageIndex > lastPage || pages.get(pageIndex) != null) {
+            return false;
+        }
+
+        final Page previous = pages.get(pageIndex - 1);
+        final Page next = pages.get(pageIndex + 1);
+        final boolean byKeyset = (previous != null && previous.size() > 0) || (next != null && next.size() > 0);
+
+        loadingPage = pageIndex;
+
+        PAGE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                final Page page;
+
+                if (previous != null && previous.size() > 0) {
+                    page = source.loadAfter(previous.lastName, previous.lastRowId, PAGE_SIZE);
+                } else if (next != null && next.size() > 0) {
+                    page = source.loadBefore(next.firstName, next.firstRowId, PAGE_SIZE);
+                } else {
+                    page = source.loadAt(pageIndex * PAGE_SIZE, PAGE_SIZE);
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(pageIndex, page, byKeyset);
+                    }
+                });
+            }
+        });
+
+        return true;
+    }
+
+    private void onPageLoaded(int pageIndex, Page page, boolean byKeyset) {
+
+        loadingPage = -1;
+
+        if (released) {
+            return;
+        }
+
+        if (byKeyset) {
+            keysetLoads++;
+        } else {
+            offsetLoads++;
+        }
+
+        // The user might have scrolled far away while the page was loaded
+        if (Math.abs(pageIndex - accessedPage) < EVICT_DISTANCE) {
+
+            pages.put(pageIndex, page);
+
+            if (listener != null) {
+                listener.onRangeLoaded(pageIndex * PAGE_SIZE, Math.min(PAGE_SIZE, size - pageIndex * PAGE_SIZE));
+            }
+        }
+
+        loadAround();
+    }
+
+    /**
+     * Drops the pages that are EVICT_DISTANCE or more pages away from the accessed one.
+     * Their items are not displayed, so the RecyclerView does not have to be notified.
+     */
+    private void evictDistantPages() {
+
+        for (int i = pages.size() - 1; i >= 0; i--) {
+
+            if (Math.abs(pages.keyAt(i) - accessedPage) >= EVICT_DISTANCE) {
+
+                pages.removeAt(i);
+                evictions++;
+            }
+        }
+    }
+}
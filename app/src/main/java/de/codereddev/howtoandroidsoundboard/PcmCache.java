@@ -0,0 +1,225 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.ComponentCallbacks2;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+/**
+ * Holds decoded sounds in memory keyed by their resource id.
+ * All sounds together are bounded by a byte budget. Pinned sounds may use up to half of it and are kept
+ * until they are unpinned or the system runs critically low on memory.
+ * Unpinned sounds share the rest and are evicted in least recently used order.
+ */
+public class PcmCache {
+
+    // Define the share of the budget the pinned sounds may occupy
+    private static final int MAX_PINNED_DIVISOR = 2;
+
+    private final int maxBytes;
+
+    private final LruCache<Integer, PcmSound> lruCache;
+    private final SparseArray<PcmSound> pinnedSounds = new SparseArray<>();
+
+    // Number of bytes occupied by the pinned sounds
+    private int pinnedBytes = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Creates a PcmCache.
+     *
+     * @param maxBytes Maximum number of bytes all cached sounds may occupy.
+     */
+    public PcmCache(int maxBytes) {
+
+        this.maxBytes = maxBytes;
+
+        // Is trimmed further by the bytes of the pinned sounds
+        lruCache = new LruCache<Integer, PcmSound>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer key, PcmSound value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns a decoded sound and counts the lookup as hit or miss.
+     *
+     * @param soundId Resource id of the sound.
+     * @return The decoded sound or null if it is not cached.
+     */
+    public synchronized PcmSound get(int soundId) {
+
+        PcmSound sound = pinnedSounds.get(soundId);
+
+        if (sound == null) {
+            sound = lruCache.get(soundId);
+        }
+
+        if (sound != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+
+        return sound;
+    }
+
+    /**
+     * Returns a decoded sound without counting the lookup as hit or miss.
+     *
+     * @param soundId Resource id of the sound.
+     * @return The decoded sound or null if it is not cached.
+     */
+    public synchronized PcmSound peek(int soundId) {
+
+        PcmSound sound = pinnedSounds.get(soundId);
+
+        return sound != null ? sound : lruCache.get(soundId);
+    }
+
+    /**
+     * Checks if a sound is cached without counting it as hit or miss.
+     *
+     * @param soundId Resource id of the sound.
+     * @return True if the sound is cached.
+     */
+    public synchronized boolean contains(int soundId) {
+
+        return pinnedSounds.get(soundId) != null || lruCache.get(soundId) != null;
+    }
+
+    /**
+     * Adds a decoded sound to the least recently used part of the cache.
+     *
+     * @param soundId Resource id of the sound.
+     * @param sound   Decoded sound.
+     */
+    public synchronized void put(int soundId, PcmSound sound) {
+
+        if (pinnedSounds.get(soundId) == null) {
+
+            lruCache.put(soundId, sound);
+            lruCache.trimToSize(getUnpinnedMaxBytes());
+        }
+    }
+
+    /**
+     * Adds a decoded sound that is not evicted in least recently used order.
+     * Its bytes are taken from the budget of the unpinned sounds.
+     *
+     * @param soundId Resource id of the sound.
+     * @param sound   Decoded sound.
+     * @return False if the sound has not been pinned because the pinned sounds would exceed their share.
+     */
+    public synchronized boolean pin(int soundId, PcmSound sound) {
+
+        PcmSound previousSound = pinnedSounds.get(soundId);
+        int previousBytes = previousSound != null ? previousSound.getByteCount() : 0;
+
+        if (pinnedBytes - previousBytes + sound.getByteCount() > maxBytes / MAX_PINNED_DIVISOR) {
+            return false;
+        }
+
+        lruCache.remove(soundId);
+        pinnedSounds.put(soundId, sound);
+        pinnedBytes += sound.getByteCount() - previousBytes;
+
+        lruCache.trimToSize(getUnpinnedMaxBytes());
+
+        return true;
+    }
+
+    /**
+     * Moves all pinned sounds back into the least recently used part of the cache.
+     */
+    public synchronized void unpinAll() {
+
+        pinnedBytes = 0;
+
+        for (int i = 0; i < pinnedSounds.size(); i++) {
+            lruCache.put(pinnedSounds.keyAt(i), pinnedSounds.valueAt(i));
+        }
+
+        pinnedSounds.clear();
+    }
+
+    /**
+     * Drops cached sounds depending on how much memory the system needs.
+     *
+     * @param level Level given by {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public synchronized void trimMemory(int level) {
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+
+            // The process is about to be killed so even pinned sounds have to go
+            pinnedSounds.clear();
+            pinnedBytes = 0;
+            lruCache.evictAll();
+
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+
+            lruCache.evictAll();
+
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+
+            lruCache.trimToSize(getUnpinnedMaxBytes() / 2);
+        }
+    }
+
+    /**
+     * Drops all unpinned sounds.
+     */
+    public synchronized void evictUnpinned() {
+
+        lruCache.evictAll();
+    }
+
+    /**
+     * @return The maximum number of bytes all cached sounds may occupy. Larger sounds can never be cached.
+     */
+    public int getMaxBytes() {
+
+        return maxBytes;
+    }
+
+    /**
+     * @return The number of bytes the unpinned sounds may occupy next to the pinned ones.
+     */
+    private int getUnpinnedMaxBytes() {
+
+        return maxBytes - pinnedBytes;
+    }
+
+    /**
+     * @return The number of bytes occupied by all cached sounds.
+     */
+    public synchronized long getByteCount() {
+
+        return lruCache.size() + pinnedBytes;
+    }
+
+    /**
+     * @return The share of lookups that found a cached sound.
+     */
+    public synchronized float getHitRatio() {
+
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0f : (float) hitCount / lookups;
+    }
+
+    /**
+     * @return The share of lookups that did not find a cached sound.
+     */
+    public synchronized float getMissRatio() {
+
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0f : (float) missCount / lookups;
+    }
+}
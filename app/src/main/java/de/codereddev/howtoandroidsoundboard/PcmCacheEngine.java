@@ -0,0 +1,742 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PlaybackEngine that keeps decoded PCM data of played sounds in a PcmCache.
+ * Cache hits are mixed into a pre-created AudioTrack without decoding the file again,
+ * so up to MAX_MIXED_SOUNDS of them sound at the same time and alongside the voices of the wrapped engine.
+ * Cache misses are played by the wrapped engine while the sound is decoded in the background.
+ * Sounds whose PCM data would not fit into the cache are never decoded.
+ */
+public class PcmCacheEngine implements PlaybackEngine, ComponentCallbacks2, SoundRepository.Observer {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = PcmCacheEngine.class.getSimpleName();
+
+    // Define the default budget of the cache and the number of pinned favorites
+    public static final int DEFAULT_CACHE_BYTES = 8 * 1024 * 1024;
+    public static final int DEFAULT_PINNED_FAVORITES = 5;
+
+    // Define the format the AudioTrack is created with before the first sound is played
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+    private static final int DEFAULT_CHANNEL_COUNT = 2;
+
+    // Define the number of bytes written to the AudioTrack at once
+    private static final int WRITE_CHUNK_BYTES = 4096;
+
+    // Define the maximum number of cached sounds that are mixed at the same time
+    public static final int MAX_MIXED_SOUNDS = 4;
+
+    private final PlaybackEngine delegate;
+    private final PcmCache cache;
+
+    // Decodes missed sounds in the background
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+
+    // Holds all sound ids that are currently decoded
+    private final SparseBooleanArray decodingSounds = new SparseBooleanArray();
+
+    // Holds all sound ids whose PCM data is larger than the cache, guarded by decodingSounds
+    private final SparseBooleanArray oversizedSounds = new SparseBooleanArray();
+
+    // Thread that blocks on AudioTrack.write() while streaming a sound
+    private final Handler writerHandler;
+
+    private AudioTrack audioTrack;
+    private int trackSampleRate;
+    private int trackChannelCount;
+
+    // Holds the sounds that are mixed into the AudioTrack, the oldest first
+    private final ArrayList<MixedSound> mixedSounds = new ArrayList<>();
+
+    // Is set while the writer thread mixes sounds of the given format. Guarded by mixedSounds.
+    private boolean mixing = false;
+    private int mixSampleRate;
+    private int mixChannelCount;
+
+    // Is increased by every stop, so the writer thread drops what it has written before. Guarded by mixedSounds.
+    private int generation = 0;
+
+    // Hold one chunk of the mix, only used by the writer thread
+    private final int[] mixSums = new int[WRITE_CHUNK_BYTES / 2];
+    private final short[] mixBuffer = new short[WRITE_CHUNK_BYTES / 2];
+
+    // Number of frames written since the AudioTrack has been created or flushed, only used by the writer thread
+    private long framesWritten = 0;
+
+    // Counts the mixed sounds that have been cut off for a newer one. Guarded by mixedSounds.
+    private long droppedMixedSounds = 0;
+
+    // Resource id of the sound whose first frame is awaited
+    private volatile int streamingSoundId = 0;
+
+    private final Runnable mixRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mixAll();
+        }
+    };
+
+    // Receives the marker callbacks of the AudioTrack because the writer thread is blocked
+    private final Handler markerHandler = new Handler(Looper.getMainLooper());
+
+    private boolean callbacksRegistered = false;
+
+    // Number of favorites to pin and the context to read them, set by pinFavorites(). Guarded by this.
+    private int pinnedFavoriteCount = 0;
+    private Context pinContext;
+
+    /**
+     * Creates a PcmCacheEngine with the default budget.
+     *
+     * @param delegate Engine that plays sounds which are not cached.
+     */
+    public PcmCacheEngine(PlaybackEngine delegate) {
+        this(delegate, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Creates a PcmCacheEngine.
+     *
+     * @param delegate   Engine that plays sounds which are not cached.
+     * @param cacheBytes Maximum number of bytes all cached sounds may occupy, pinned ones included.
+     */
+    public PcmCacheEngine(PlaybackEngine delegate, int cacheBytes) {
+
+        this.delegate = delegate;
+        this.cache = new PcmCache(cacheBytes);
+
+        HandlerThread writerThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_URGENT_AUDIO);
+        writerThread.start();
+        writerHandler = new Handler(writerThread.getLooper());
+    }
+
+    @Override
+    public void preload(Context context, int soundId) {
+
+        registerCallbacks(context);
+        delegate.preload(context, soundId);
+    }
+
+    @Override
+    public void play(Context context, int soundId) {
+
+        registerCallbacks(context);
+
+        PcmSound sound = cache.get(soundId);
+
+        // Cached sounds are mixed with each other and sound alongside the voices of the wrapped engine
+        if (sound != null && mix(soundId, sound)) {
+            return;
+        }
+
+        delegate.play(context, soundId);
+
+        if (sound == null) {
+            decodeInBackground(context, soundId);
+        }
+    }
+
+    @Override
+    public void evict(int soundId) {
+
+        // The decoded PCM data is bounded by the budget of the cache and kept for the sounds that are played
+        delegate.evict(soundId);
+    }
+
+    @Override
+    public void stop() {
+
+        stopTrack();
+        delegate.stop();
+    }
+
+    @Override
+    public synchronized void release() {
+
+        stopTrack();
+
+        writerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                if (audioTrack != null) {
+                    audioTrack.release();
+                    audioTrack = null;
+                }
+            }
+        });
+
+        // Keep the pinned favorites because they are needed again as soon as an activity is shown
+        cache.evictUnpinned();
+        delegate.release();
+    }
+
+    /**
+     * Decodes the top favorites in the background and pins them in the cache.
+     * The favorites are ranked by how recently they have been played, favorites that have not been
+     * played recently follow in alphabetical order.
+     * The pins follow every later change of the favorites. Must be called on the main thread.
+     *
+     * @param context Context to access the favorites and the sound resources.
+     * @param count   Number of favorites to pin.
+     */
+    public void pinFavorites(Context context, int count) {
+
+        Context appContext = context.getApplicationContext();
+        registerCallbacks(appContext);
+
+        synchronized (this) {
+
+            pinnedFavoriteCount = count;
+            pinContext = appContext;
+        }
+
+        SoundRepository.getInstance(appContext).addObserver(this);
+
+        repinFavorites();
+    }
+
+    @Override
+    public void onFavoriteAdded(SoundObject soundObject, int position) {
+        repinFavorites();
+    }
+
+    @Override
+    public void onFavoriteRemoved(SoundObject soundObject, int position) {
+        repinFavorites();
+    }
+
+    @Override
+    public void onCatalogChanged() {
+
+        // The resource ids of the favorites might have changed
+        repinFavorites();
+    }
+
+    @Override
+    public void onFavoritesLoaded() {
+        repinFavorites();
+    }
+
+    /**
+     * Pins the current top favorites in the background.
+     * Sounds that are cached already are moved instead of being decoded again.
+     */
+    private void repinFavorites() {
+
+        final Context appContext;
+        final int count;
+
+        synchronized (this) {
+
+            appContext = pinContext;
+            count = pinnedFavoriteCount;
+        }
+
+        if (appContext == null) {
+            return;
+        }
+
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                List<Integer> soundIds = rankFavorites(appContext, count);
+
+                cache.unpinAll();
+
+                for (int soundId : soundIds) {
+
+                    PcmSound sound = cache.peek(soundId);
+
+                    if (sound == null && !isOversized(soundId)) {
+                        sound = decodeIfFits(appContext, soundId);
+                    }
+
+                    // Keep the favorite like any played sound once the pinned ones have used up their share
+                    if (sound != null && !cache.pin(soundId, sound)) {
+
+                        Log.d(LOG_TAG, "Favorite exceeds the pinned share of the cache: " + soundId);
+                        cache.put(soundId, sound);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The cache that holds the decoded sounds.
+     */
+    public PcmCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return The engine that plays the sounds which are not cached.
+     */
+    public PlaybackEngine getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return A description of the cache and the mixer that can be displayed on the debug screen.
+     */
+    public String dump() {
+
+        synchronized (mixedSounds) {
+
+            return "pcm cache KB: " + cache.getByteCount() / 1024 + ", hit ratio: " + cache.getHitRatio() + "\n"
+                    + "mixed sounds: " + mixedSounds.size() + " of " + MAX_MIXED_SOUNDS
+                    + ", dropped: " + droppedMixedSounds + "\n";
+        }
+    }
+
+    /**
+     * Returns the favorites that should be pinned, the recently played ones first.
+     * Reads the snapshot of the SoundRepository, so changes that have not been written yet are included.
+     *
+     * @param context Context to access the favorites and the preferences.
+     * @param count   Maximum number of favorites.
+     * @return Resource ids of the favorites.
+     */
+    private static List<Integer> rankFavorites(Context context, int count) {
+
+        List<SoundObject> favorites = SoundRepository.getInstance(context).getFavorites();
+
+        SparseBooleanArray favoriteIds = new SparseBooleanArray(favorites.size());
+
+        for (SoundObject favorite : favorites) {
+            favoriteIds.put(favorite.getItemId(), true);
+        }
+
+        List<Integer> soundIds = new ArrayList<>(count);
+
+        for (int soundId : RecentSounds.get(context, RecentSounds.MAX_RECENT_SOUNDS)) {
+
+            if (soundIds.size() < count && favoriteIds.get(soundId)) {
+
+                soundIds.add(soundId);
+                favoriteIds.delete(soundId);
+            }
+        }
+
+        for (int i = 0; i < favorites.size() && soundIds.size() < count; i++) {
+
+            if (favoriteIds.get(favorites.get(i).getItemId())) {
+                soundIds.add(favorites.get(i).getItemId());
+            }
+        }
+
+        return soundIds;
+    }
+
+    /**
+     * Decodes a sound in the background and puts it into the cache.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     */
+    private void decodeInBackground(Context context, final int soundId) {
+
+        synchronized (decodingSounds) {
+
+            if (decodingSounds.get(soundId) || oversizedSounds.get(soundId) || cache.contains(soundId)) {
+                return;
+            }
+
+            decodingSounds.put(soundId, true);
+        }
+
+        final Context appContext = context.getApplicationContext();
+
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                try {
+
+                    PcmSound sound = decodeIfFits(appContext, soundId);
+
+                    if (sound != null) {
+                        cache.put(soundId, sound);
+                    }
+
+                } finally {
+
+                    synchronized (decodingSounds) {
+                        decodingSounds.delete(soundId);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param soundId Resource id of the sound.
+     * @return True if the sound has been found to be too large for the cache before.
+     */
+    private boolean isOversized(int soundId) {
+
+        synchronized (decodingSounds) {
+            return oversizedSounds.get(soundId);
+        }
+    }
+
+    /**
+     * Decodes a sound unless its PCM data would exceed the budget of the cache.
+     * Such a sound would be evicted right away, so it is remembered and never decoded again.
+     * Should only be called on the decode executor.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     * @return The decoded sound or null if it does not fit or could not be decoded.
+     */
+    private PcmSound decodeIfFits(Context context, int soundId) {
+
+        try {
+
+            PcmSound sound = PcmDecoder.decode(context, soundId, cache.getMaxBytes());
+
+            if (sound == null) {
+
+                Log.d(LOG_TAG, "Sound is too large for the cache and is not decoded again: " + soundId);
+
+                synchronized (decodingSounds) {
+                    oversizedSounds.put(soundId, true);
+                }
+            }
+
+            return sound;
+
+        } catch (IOException | RuntimeException e) {
+
+            Log.e(LOG_TAG, "Failed to decode sound into the cache: " + e.getMessage());
+
+        } catch (OutOfMemoryError e) {
+
+            // The sound is played by the wrapped engine, so it is enough to give up on caching it
+            Log.e(LOG_TAG, "Not enough memory to decode sound: " + soundId);
+            cache.trimMemory(TRIM_MEMORY_RUNNING_LOW);
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds a decoded sound to the sounds that are mixed into the AudioTrack and starts mixing if necessary.
+     * If MAX_MIXED_SOUNDS are playing already the oldest one is cut off.
+     *
+     * @param soundId Resource id of the sound.
+     * @param sound   Decoded sound.
+     * @return False if sounds of another format are being mixed, the sound has to be played otherwise then.
+     */
+    private boolean mix(int soundId, PcmSound sound) {
+
+        synchronized (mixedSounds) {
+
+            if (mixing && (sound.getSampleRate() != mixSampleRate
+                    || sound.getChannelCount() != mixChannelCount)) {
+                return false;
+            }
+
+            LatencyTracer.getInstance().mark(soundId, LatencyTracer.Stage.PREPARE);
+
+            if (mixedSounds.size() >= MAX_MIXED_SOUNDS) {
+
+                mixedSounds.remove(0);
+                droppedMixedSounds++;
+            }
+
+            mixedSounds.add(new MixedSound(soundId, sound));
+
+            if (!mixing) {
+
+                mixing = true;
+                mixSampleRate = sound.getSampleRate();
+                mixChannelCount = sound.getChannelCount();
+
+                writerHandler.post(mixRunnable);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Mixes the sounds chunk by chunk into the AudioTrack until all of them have been played.
+     * Runs on the writer thread.
+     */
+    private void mixAll() {
+
+        int sampleRate;
+        int channelCount;
+
+        synchronized (mixedSounds) {
+
+            sampleRate = mixSampleRate;
+            channelCount = mixChannelCount;
+        }
+
+        AudioTrack track = getAudioTrack(sampleRate, channelCount);
+
+        // Mix the sounds of the first chunk with the generation the track is started with
+        int mixGeneration = -1;
+
+        while (true) {
+
+            int sampleCount;
+
+            synchronized (mixedSounds) {
+
+                if (track == null || mixedSounds.isEmpty()) {
+
+                    mixedSounds.clear();
+                    mixing = false;
+                    return;
+                }
+
+                // Start the track and drop what has been written before if it has been stopped in between
+                if (mixGeneration != generation) {
+
+                    mixGeneration = generation;
+
+                    if (track.getPlayState() == AudioTrack.PLAYSTATE_PAUSED) {
+
+                        track.flush();
+                        framesWritten = 0;
+                    }
+
+                    track.play();
+                }
+
+                sampleCount = mixChunk(track, channelCount);
+            }
+
+            int written = track.write(mixBuffer, 0, sampleCount);
+
+            if (written < 0) {
+
+                Log.e(LOG_TAG, "Failed to write to AudioTrack: " + written);
+                track = null;
+                continue;
+            }
+
+            framesWritten += sampleCount / channelCount;
+        }
+    }
+
+    /**
+     * Sums up the next chunk of all mixed sounds into the mix buffer and drops the sounds that have ended.
+     * Must be called while holding the lock of mixedSounds.
+     *
+     * @param track        Track the chunk is written to.
+     * @param channelCount Number of channels of the sounds.
+     * @return The number of samples in the mix buffer.
+     */
+    private int mixChunk(AudioTrack track, int channelCount) {
+
+        int sampleCount = mixBuffer.length - mixBuffer.length % channelCount;
+
+        Arrays.fill(mixSums, 0, sampleCount, 0);
+
+        for (int i = mixedSounds.size() - 1; i >= 0; i--) {
+
+            MixedSound mixedSound = mixedSounds.get(i);
+            byte[] data = mixedSound.sound.getData();
+
+            // Get notified as soon as the first frame of the sound has been rendered
+            if (mixedSound.offset == 0) {
+
+                streamingSoundId = mixedSound.soundId;
+                track.setNotificationMarkerPosition((int) framesWritten + 1);
+
+                LatencyTracer.getInstance().mark(mixedSound.soundId, LatencyTracer.Stage.START);
+            }
+
+            // Add the 16 bit little endian samples of the sound
+            int samples = Math.min(sampleCount, (data.length - mixedSound.offset) / 2);
+
+            for (int sample = 0, offset = mixedSound.offset; sample < samples; sample++, offset += 2) {
+                mixSums[sample] += (short) ((data[offset + 1] << 8) | (data[offset] & 0xff));
+            }
+
+            mixedSound.offset += samples * 2;
+
+            if (mixedSound.offset >= data.length - 1) {
+                mixedSounds.remove(i);
+            }
+        }
+
+        // Clip the sums instead of letting them wrap around
+        for (int sample = 0; sample < sampleCount; sample++) {
+            mixBuffer[sample] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixSums[sample]));
+        }
+
+        return sampleCount;
+    }
+
+    /**
+     * Cuts off all mixed sounds.
+     */
+    private synchronized void stopTrack() {
+
+        synchronized (mixedSounds) {
+
+            mixedSounds.clear();
+            generation++;
+
+            if (audioTrack != null && audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
+
+                // Pausing unblocks a pending write, flushing drops the rest of the old sounds
+                audioTrack.pause();
+                audioTrack.flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the AudioTrack or recreates it if the sound uses another format.
+     * Should only be called on the writer thread.
+     *
+     * @param sampleRate   Sample rate of the sound.
+     * @param channelCount Number of channels of the sound.
+     * @return An AudioTrack in streaming mode or null if it could not be created.
+     */
+    private synchronized AudioTrack getAudioTrack(int sampleRate, int channelCount) {
+
+        if (audioTrack != null
+                && (trackSampleRate != sampleRate || trackChannelCount != channelCount)) {
+
+            audioTrack.release();
+            audioTrack = null;
+        }
+
+        if (audioTrack == null) {
+            audioTrack = createAudioTrack(sampleRate, channelCount);
+        }
+
+        return audioTrack;
+    }
+
+    /**
+     * Creates an AudioTrack in streaming mode.
+     *
+     * @param sampleRate   Sample rate of the sound.
+     * @param channelCount Number of channels of the sound.
+     * @return The AudioTrack or null if it could not be initialised.
+     */
+    private AudioTrack createAudioTrack(int sampleRate, int channelCount) {
+
+        int channelConfig = channelCount == 1
+                ? AudioFormat.CHANNEL_OUT_MONO
+                : AudioFormat.CHANNEL_OUT_STEREO;
+
+        // Hold at least two chunks, so a chunk that is written right after a stop does not block
+        int bufferSize = Math.max(2 * WRITE_CHUNK_BYTES,
+                                  AudioTrack.getMinBufferSize(sampleRate, channelConfig,
+                                                              AudioFormat.ENCODING_PCM_16BIT));
+
+        //noinspection deprecation
+        AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, channelConfig,
+                                          AudioFormat.ENCODING_PCM_16BIT, bufferSize,
+                                          AudioTrack.MODE_STREAM);
+
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+
+            Log.e(LOG_TAG, "Failed to initialise AudioTrack");
+            track.release();
+            return null;
+        }
+
+        track.setPlaybackPositionUpdateListener(new AudioTrack.OnPlaybackPositionUpdateListener() {
+            @Override
+            public void onMarkerReached(AudioTrack track) {
+
+                LatencyTracer.getInstance()
+                             .mark(streamingSoundId, LatencyTracer.Stage.FIRST_FRAME);
+            }
+
+            @Override
+            public void onPeriodicNotification(AudioTrack track) {
+            }
+        }, markerHandler);
+
+        trackSampleRate = sampleRate;
+        trackChannelCount = channelCount;
+        framesWritten = 0;
+
+        return track;
+    }
+
+    /**
+     * Registers the engine for memory callbacks and creates the AudioTrack ahead of the first hit.
+     *
+     * @param context Context to register the callbacks with.
+     */
+    private synchronized void registerCallbacks(Context context) {
+
+        if (callbacksRegistered) {
+            return;
+        }
+
+        context.getApplicationContext().registerComponentCallbacks(this);
+        callbacksRegistered = true;
+
+        writerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                getAudioTrack(DEFAULT_SAMPLE_RATE, DEFAULT_CHANNEL_COUNT);
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        cache.trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        cache.trimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * A cached sound that is being mixed together with the position of its next sample.
+     */
+    private static class MixedSound {
+
+        private final int soundId;
+        private final PcmSound sound;
+        private int offset = 0;
+
+        MixedSound(int soundId, PcmSound sound) {
+
+            this.soundId = soundId;
+            this.sound = sound;
+        }
+    }
+}
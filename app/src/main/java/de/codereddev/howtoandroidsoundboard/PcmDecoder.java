@@ -0,0 +1,194 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a sound resource into 16 bit PCM data by using MediaExtractor and MediaCodec.
+ */
+public final class PcmDecoder {
+
+    // Define the time in microseconds to wait for a codec buffer
+    private static final long TIMEOUT_US = 10000;
+
+    // Define the number of bytes of a 16 bit sample
+    private static final int BYTES_PER_SAMPLE = 2;
+
+    private PcmDecoder() {
+    }
+
+    /**
+     * Decodes a sound resource completely. Should not be called on the main thread.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     * @return The decoded sound.
+     * @throws IOException If the resource can not be read or contains no audio track.
+     */
+    public static PcmSound decode(Context context, int soundId) throws IOException {
+        return decode(context, soundId, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decodes a sound resource unless its PCM data would exceed a size. Should not be called on the main thread.
+     * The size is estimated from the duration in the file header before anything is decoded,
+     * files without a duration are decoded until the size is exceeded.
+     *
+     * @param context  Context to access the sound resource.
+     * @param soundId  Resource id of the sound.
+     * @param maxBytes Maximum number of bytes of the decoded data.
+     * @return The decoded sound or null if it would exceed maxBytes.
+     * @throws IOException If the resource can not be read or contains no audio track.
+     */
+    public static PcmSound decode(Context context, int soundId, int maxBytes) throws IOException {
+
+        AssetFileDescriptor afd = context.getResources().openRawResourceFd(soundId);
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+
+        try {
+
+            extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+
+            // Find the first audio track of the file
+            MediaFormat format = null;
+
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+
+                if (trackFormat.getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+
+            if (format == null) {
+                throw new IOException("No audio track found in sound: " + soundId);
+            }
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+            // Skip sounds that can not fit before anything is allocated for them
+            if (format.containsKey(MediaFormat.KEY_DURATION)) {
+
+                long estimatedBytes = format.getLong(MediaFormat.KEY_DURATION) * sampleRate / 1000000L
+                        * channelCount * BYTES_PER_SAMPLE;
+
+                if (estimatedBytes > maxBytes) {
+                    return null;
+                }
+            }
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            //noinspection deprecation
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            //noinspection deprecation
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[0];
+
+            boolean inputDone = false;
+            boolean outputDone = false;
+
+            while (!outputDone) {
+
+                // Feed the codec with compressed data until the end of the file is reached
+                if (!inputDone) {
+
+                    int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+
+                    if (inputIndex >= 0) {
+
+                        ByteBuffer inputBuffer = inputBuffers[inputIndex];
+                        inputBuffer.clear();
+
+                        int size = extractor.readSampleData(inputBuffer, 0);
+
+                        if (size < 0) {
+
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0,
+                                                   MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                // Collect the decoded data
+                int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+
+                if (outputIndex >= 0) {
+
+                    ByteBuffer outputBuffer = outputBuffers[outputIndex];
+
+                    // The header might have understated the duration
+                    if ((long) out.size() + info.size > maxBytes) {
+
+                        codec.releaseOutputBuffer(outputIndex, false);
+                        return null;
+                    }
+
+                    if (chunk.length < info.size) {
+                        chunk = new byte[info.size];
+                    }
+
+                    outputBuffer.position(info.offset);
+                    outputBuffer.limit(info.offset + info.size);
+                    outputBuffer.get(chunk, 0, info.size);
+                    out.write(chunk, 0, info.size);
+
+                    codec.releaseOutputBuffer(outputIndex, false);
+
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        outputDone = true;
+                    }
+
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+
+                    //noinspection deprecation
+                    outputBuffers = codec.getOutputBuffers();
+
+                } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+
+                    // The decoder reports the real format of the PCM data
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                }
+            }
+
+            return new PcmSound(out.toByteArray(), sampleRate, channelCount);
+
+        } catch (IllegalStateException e) {
+
+            throw new IOException("Failed to decode sound " + soundId + ": " + e.getMessage());
+        } finally {
+
+            if (codec != null) {
+                codec.release();
+            }
+
+            extractor.release();
+            afd.close();
+        }
+    }
+}
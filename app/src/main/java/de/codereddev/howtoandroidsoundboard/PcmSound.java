@@ -0,0 +1,48 @@
+package de.codereddev.howtoandroidsoundboard;
+
+/**
+ * Holds a completely decoded sound as 16 bit PCM data.
+ */
+public class PcmSound {
+
+    private final byte[] data;
+    private final int sampleRate;
+    private final int channelCount;
+
+    /**
+     * Creates an object that holds the decoded data of a sound.
+     *
+     * @param data         16 bit PCM data.
+     * @param sampleRate   Sample rate of the data in Hz.
+     * @param channelCount Number of interleaved channels.
+     */
+    public PcmSound(byte[] data, int sampleRate, int channelCount) {
+
+        this.data = data;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+    }
+
+    public byte[] getData() {
+
+        return data;
+    }
+
+    public int getSampleRate() {
+
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+
+        return channelCount;
+    }
+
+    /**
+     * @return The number of bytes the sound occupies in memory.
+     */
+    public int getByteCount() {
+
+        return data.length;
+    }
+}
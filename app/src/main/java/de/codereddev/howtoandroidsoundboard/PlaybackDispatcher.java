@@ -0,0 +1,360 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every state change of the PlaybackEngine on one serialized worker thread.
+ * The queue of pending requests is bounded and rapid repeat taps on the same sound are coalesced,
+ * so mashing a button can neither pile up threads nor race the player.
+ * Is designed as a Singleton because there must only be one playback thread in the app.
+ */
+public class PlaybackDispatcher {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = PlaybackDispatcher.class.getSimpleName();
+
+    // Define the maximum number of requests that may wait for the worker
+    public static final int MAX_QUEUE_DEPTH = 8;
+
+    // Define the time in which a repeated tap on the same sound is merged into the previous one
+    public static final long COALESCE_WINDOW_MS = 60;
+
+    private static PlaybackDispatcher instance = null;
+
+    /**
+     * Gets informed about a preload of a single sound on the worker thread.
+     */
+    public interface PreloadCallback {
+
+        /**
+         * Gets called right before the preload starts.
+         *
+         * @param soundId Resource id of the sound.
+         * @return False if the preload should be skipped.
+         */
+        boolean isStillNeeded(int soundId);
+
+        /**
+         * Gets called after the preload has finished or has been skipped.
+         *
+         * @param soundId Resource id of the sound.
+         * @param skipped True if the preload has been skipped.
+         */
+        void onPreloadFinished(int soundId, boolean skipped);
+    }
+
+    private final Handler handler;
+
+    // Holds all sound ids that are waiting to be played
+    private final SparseBooleanArray pendingSounds = new SparseBooleanArray();
+
+    private int lastSoundId = 0;
+    private long lastDispatchTime = 0;
+
+    // Counters that describe the state of the queue
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // Is increased whenever an engine has been released, so everything preloaded before is gone
+    private final AtomicInteger releaseGeneration = new AtomicInteger();
+
+    /**
+     * Creates the dispatcher and starts its worker thread.
+     */
+    private PlaybackDispatcher() {
+
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_URGENT_AUDIO);
+        thread.start();
+
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Returns the instance of the dispatcher or if necessary creates it.
+     *
+     * @return The current instance of the dispatcher.
+     */
+    public static synchronized PlaybackDispatcher getInstance() {
+
+        if (instance == null) {
+            instance = new PlaybackDispatcher();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Queues a sound to be played on the worker thread.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id to play.
+     * @return True if the request was queued. False if it was coalesced or dropped.
+     */
+    public boolean dispatchPlay(Context context, final int soundId) {
+
+        final Context appContext = context.getApplicationContext();
+
+        synchronized (pendingSounds) {
+
+            long now = SystemClock.uptimeMillis();
+
+            // Merge the tap into a previous one that has not been played yet or was just played
+            if (pendingSounds.get(soundId)
+                    || (soundId == lastSoundId && now - lastDispatchTime < COALESCE_WINDOW_MS)) {
+
+                coalescedCount.incrementAndGet();
+                return false;
+            }
+
+            if (queueDepth.get() >= MAX_QUEUE_DEPTH) {
+
+                Log.d(LOG_TAG, "Playback queue is full, dropping sound: " + soundId);
+                droppedCount.incrementAndGet();
+                return false;
+            }
+
+            pendingSounds.put(soundId, true);
+            lastSoundId = soundId;
+            lastDispatchTime = now;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+
+                synchronized (pendingSounds) {
+                    pendingSounds.delete(soundId);
+                }
+
+                LatencyTracer.getInstance().mark(soundId, LatencyTracer.Stage.DISPATCH);
+
+                EventHandlerClass.startMediaPlayer(appContext, soundId);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Queues a list of sounds to be preloaded on the worker thread.
+     *
+     * @param context      Context to access the sound resources.
+     * @param soundObjects SoundObjects to preload.
+     */
+    public void dispatchPreload(Context context, final List<SoundObject> soundObjects) {
+
+        final Context appContext = context.getApplicationContext();
+
+        if (queueDepth.get() >= MAX_QUEUE_DEPTH) {
+
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+
+                PlaybackEngine playbackEngine = EventHandlerClass.getPlaybackEngine();
+
+                for (SoundObject soundObject : soundObjects) {
+                    playbackEngine.preload(appContext, soundObject.getItemId());
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues a single sound to be preloaded on the worker thread.
+     *
+     * @param context  Context to access the sound resource.
+     * @param soundId  Resource id of the sound.
+     * @param callback Callback that may skip the preload and gets informed when it finished.
+     * @return True if the request was queued. False if it was dropped.
+     */
+    public boolean dispatchPreload(Context context, final int soundId,
+                                   final PreloadCallback callback) {
+
+        final Context appContext = context.getApplicationContext();
+
+        if (queueDepth.get() >= MAX_QUEUE_DEPTH) {
+
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+
+                if (!callback.isStillNeeded(soundId)) {
+
+                    callback.onPreloadFinished(soundId, true);
+                    return;
+                }
+
+                EventHandlerClass.getPlaybackEngine().preload(appContext, soundId);
+                callback.onPreloadFinished(soundId, false);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Queues sounds to be evicted from the PlaybackEngine on the worker thread.
+     * The request is dropped if the queue is full, the engine keeps its memory bounded either way.
+     *
+     * @param soundIds Resource ids of the sounds to evict.
+     * @return True if the request was queued. False if it was dropped.
+     */
+    public boolean dispatchEvict(final List<Integer> soundIds) {
+
+        if (queueDepth.get() >= MAX_QUEUE_DEPTH) {
+
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+
+                PlaybackEngine playbackEngine = EventHandlerClass.getPlaybackEngine();
+
+                for (int soundId : soundIds) {
+                    playbackEngine.evict(soundId);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Queues the preloads of the warmup on the worker thread.
+     * Only one sound is queued at a time and the next one is queued once it has been preloaded,
+     * so a tap during the warmup waits for a single preload at most.
+     *
+     * @param context    Context to access the sound resources.
+     * @param soundIds   Resource ids of the sounds to preload.
+     * @param onFinished Gets called on the worker thread once all sounds have been preloaded.
+     */
+    public void dispatchWarmup(Context context, List<Integer> soundIds, Runnable onFinished) {
+        dispatchWarmupPreload(context.getApplicationContext(), soundIds, 0, onFinished);
+    }
+
+    private void dispatchWarmupPreload(final Context appContext, final List<Integer> soundIds, final int index,
+                                       final Runnable onFinished) {
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+
+                if (index >= soundIds.size()) {
+
+                    onFinished.run();
+                    return;
+                }
+
+                EventHandlerClass.getPlaybackEngine().preload(appContext, soundIds.get(index));
+
+                // Queue the next sound behind the taps that have arrived in the meantime
+                dispatchWarmupPreload(appContext, soundIds, index + 1, onFinished);
+            }
+        });
+    }
+
+    /**
+     * Queues the release of a PlaybackEngine. Release requests are never dropped.
+     *
+     * @param playbackEngine PlaybackEngine to release.
+     */
+    public void dispatchRelease(final PlaybackEngine playbackEngine) {
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+
+                playbackEngine.release();
+                releaseGeneration.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Posts a task to the worker thread and keeps track of the queue depth.
+     *
+     * @param task Task to run on the worker thread.
+     */
+    private void post(final Runnable task) {
+
+        queueDepth.incrementAndGet();
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                queueDepth.decrementAndGet();
+                dispatchedCount.incrementAndGet();
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * @return A number that changes whenever an engine has been released and has to load every sound again.
+     */
+    public int getReleaseGeneration() {
+        return releaseGeneration.get();
+    }
+
+    /**
+     * @return A description of the queue that can be displayed on the debug screen.
+     */
+    public String dump() {
+
+        return "playback queue: " + queueDepth.get() + ", dispatched: " + dispatchedCount.get()
+                + ", coalesced: " + coalescedCount.get() + ", dropped: " + droppedCount.get() + "\n";
+    }
+
+    /**
+     * @return The number of requests that are waiting for the worker thread.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return The number of requests that have been run by the worker thread.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return The number of taps that have been merged into a previous tap on the same sound.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return The number of requests that have been dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
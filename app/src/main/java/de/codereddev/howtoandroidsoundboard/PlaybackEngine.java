@@ -0,0 +1,47 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+
+/**
+ * Abstraction of the component that actually turns a sound resource into audio.
+ * Implementations can be swapped in through {@link EventHandlerClass#setPlaybackEngine(PlaybackEngine)}
+ * so the rest of the app does not need to know which audio API is used.
+ */
+public interface PlaybackEngine {
+
+    /**
+     * Prepares a sound so that a later call to {@link #play(Context, int)} can start without delay.
+     * Calling this method more than once for the same sound has no additional effect.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     */
+    void preload(Context context, int soundId);
+
+    /**
+     * Starts playing a sound. Loads the sound first if it has not been preloaded.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     */
+    void play(Context context, int soundId);
+
+    /**
+     * Drops the prepared data of a sound to free its memory.
+     * The sound is prepared again the next time it is preloaded or played.
+     *
+     * @param soundId Resource id of the sound.
+     */
+    void evict(int soundId);
+
+    /**
+     * Stops every sound that is currently playing.
+     */
+    void stop();
+
+    /**
+     * Releases all data and native resources held by the engine.
+     * The engine can still be used afterwards but has to load every sound again.
+     */
+    void release();
+}
@@ -0,0 +1,116 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Remembers the most recently played sounds across app starts.
+ * Sounds are saved by their resource entry name because resource ids change between builds.
+ */
+public final class RecentSounds {
+
+    // Define the maximum number of sounds that are remembered
+    public static final int MAX_RECENT_SOUNDS = 8;
+
+    // Define a name for the preference file and a key name to save the list to it
+    private static final String PREFS_NAME = "RecentPref";
+    private static final String PREF_RECENT_KEY = "recent_sounds";
+
+    // Holds the entry names of the recent sounds, the most recent first
+    private static LinkedList<String> recentNames = null;
+
+    private RecentSounds() {
+    }
+
+    /**
+     * Moves a sound to the front of the recent sounds.
+     *
+     * @param context Context to access the preference file.
+     * @param soundId Resource id of the played sound.
+     */
+    public static synchronized void record(Context context, int soundId) {
+
+        String name;
+
+        try {
+            name = context.getResources().getResourceEntryName(soundId);
+        } catch (Resources.NotFoundException e) {
+            return;
+        }
+
+        LinkedList<String> names = getRecentNames(context);
+
+        // Nothing changes if the sound is already the most recent one
+        if (name.equals(names.peekFirst())) {
+            return;
+        }
+
+        names.remove(name);
+        names.addFirst(name);
+
+        while (names.size() > MAX_RECENT_SOUNDS) {
+            names.removeLast();
+        }
+
+        getPreferences(context).edit()
+                               .putString(PREF_RECENT_KEY, TextUtils.join(",", names))
+                               .apply();
+    }
+
+    /**
+     * Returns the resource ids of the most recently played sounds that still exist.
+     *
+     * @param context Context to access the preference file and the resources.
+     * @param count   Maximum number of sounds to return.
+     * @return The resource ids, the most recent first.
+     */
+    public static synchronized List<Integer> get(Context context, int count) {
+
+        List<Integer> soundIds = new ArrayList<>();
+
+        for (String name : getRecentNames(context)) {
+
+            if (soundIds.size() >= count) {
+                break;
+            }
+
+            int soundId = context.getResources().getIdentifier(name, "raw", context.getPackageName());
+
+            if (soundId != 0) {
+                soundIds.add(soundId);
+            }
+        }
+
+        return soundIds;
+    }
+
+    private static LinkedList<String> getRecentNames(Context context) {
+
+        if (recentNames == null) {
+
+            recentNames = new LinkedList<>();
+
+            String saved = getPreferences(context).getString(PREF_RECENT_KEY, "");
+
+            if (!saved.isEmpty()) {
+
+                for (String name : saved.split(",")) {
+                    recentNames.add(name);
+                }
+            }
+        }
+
+        return recentNames;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,71 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Turns sound names and queries into search keys, so both are compared the same way.
+ * A search key is decomposed with NFKD, loses all diacritics, is case folded
+ * and only consists of words of letters and digits separated by single spaces.
+ * For example "Sch&ouml;ne Gr&uuml;&szlig;e!" becomes "schone grusse".
+ */
+public final class SearchNormalizer {
+
+    // Matches the combining marks that NFKD splits off the base characters
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    // Define the largest code point, every key that begins with a prefix is smaller than the prefix followed by it
+    private static final String MAX_CODE_POINT = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    private SearchNormalizer() {
+    }
+
+    /**
+     * Computes the search key of a name or query.
+     * Case folding maps to upper and then to lower case, so the sharp s becomes "ss" like its upper case form.
+     * The root locale is used because the keys are stored and must not change with the locale of the device.
+     *
+     * @param text Name or query.
+     * @return The search key, an empty string if the text contains no letters or digits.
+     */
+    public static String normalize(String text) {
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        String folded = stripped.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+
+        StringBuilder builder = new StringBuilder(folded.length());
+
+        for (int i = 0; i < folded.length(); ) {
+
+            int codePoint = folded.codePointAt(i);
+
+            if (Character.isLetterOrDigit(codePoint)) {
+                builder.appendCodePoint(codePoint);
+            } else if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ') {
+                builder.append(' ');
+            }
+
+            i += Character.charCount(codePoint);
+        }
+
+        // Remove a trailing separator
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) == ' ') {
+            builder.setLength(builder.length() - 1);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the exclusive upper bound of all search keys that begin with a prefix.
+     * Together with the prefix itself as lower bound it turns a prefix search into a range on the index.
+     *
+     * @param prefix Search key that is the prefix.
+     * @return The upper bound.
+     */
+    public static String prefixUpperBound(String prefix) {
+        return prefix + MAX_CODE_POINT;
+    }
+}
@@ -0,0 +1,279 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs search queries in the background and delivers only the result of the latest query.
+ * Queries are debounced, so fast typing only searches once the user pauses.
+ * Every query gets a generation number. A newer query cancels the pending or running one
+ * and results of an older generation are dropped, so a slow query can never overwrite a newer result.
+ * All pipelines share one background executor.
+ * Must be used from the main thread.
+ */
+public class SearchPipeline {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = SearchPipeline.class.getSimpleName();
+
+    // Define the default time to wait for further input before a query is started
+    public static final long DEFAULT_DEBOUNCE_MS = 150;
+
+    // Runs the queries of all pipelines one after another
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Searches for the sounds that match a query. Is called on the search executor.
+     */
+    public interface Source {
+
+        /**
+         * Searches for the sounds that match a query.
+         *
+         * @param query Query as typed by the user.
+         * @return The matching sounds.
+         */
+        ArrayList<SoundObject> search(String query);
+    }
+
+    /**
+     * Receives the result of the latest query on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * Gets called with the result of the latest query.
+         *
+         * @param query   Query the result belongs to.
+         * @param results The matching sounds.
+         */
+        void onResults(String query, ArrayList<SoundObject> results);
+    }
+
+    private final Source source;
+    private final Listener listener;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private long debounceMs;
+
+    // Is increased by every query and cancel() to invalidate the older ones
+    private final AtomicLong generation = new AtomicLong();
+
+    // Holds the latest query until it has been delivered or cancelled
+    private Query currentQuery = null;
+
+    // Counters that describe the work of the pipeline
+    private final AtomicLong issuedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    /**
+     * Creates a SearchPipeline with the default debounce.
+     *
+     * @param source   Searches for the sounds.
+     * @param listener Receives the results.
+     */
+    public SearchPipeline(Source source, Listener listener) {
+        this(source, listener, DEFAULT_DEBOUNCE_MS);
+    }
+
+    /**
+     * Creates a SearchPipeline.
+     *
+     * @param source     Searches for the sounds.
+     * @param listener   Receives the results.
+     * @param debounceMs Time to wait for further input before a query is started.
+     */
+    public SearchPipeline(Source source, Listener listener, long debounceMs) {
+
+        this.source = source;
+        this.listener = listener;
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Changes the time to wait for further input before a query is started.
+     *
+     * @param debounceMs Time in milliseconds. 0 starts every query right away.
+     */
+    public void setDebounce(long debounceMs) {
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Searches for a query once the debounce has passed without a newer query.
+     *
+     * @param query Query as typed by the user.
+     */
+    public void submit(String query) {
+        submit(query, debounceMs);
+    }
+
+    /**
+     * Searches for a query right away, e.g. when the user submits the search.
+     *
+     * @param query Query as typed by the user.
+     */
+    public void submitNow(String query) {
+        submit(query, 0);
+    }
+
+    /**
+     * Cancels the pending or running query and drops its result.
+     */
+    public void cancel() {
+
+        generation.incrementAndGet();
+        cancelQueries();
+    }
+
+    /**
+     * Runs a task on the search executor before all queries that are submitted afterwards,
+     * e.g. to build the index the queries search in.
+     *
+     * @param task Task to run in the background.
+     */
+    public void prepare(Runnable task) {
+        SEARCH_EXECUTOR.execute(task);
+    }
+
+    public long getIssuedCount() {
+        return issuedCount.get();
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * Writes the counters into the log.
+     */
+    public void log() {
+
+        Log.d(LOG_TAG, "Queries issued: " + issuedCount.get() + ", cancelled: " + cancelledCount.get()
+                + ", delivered: " + deliveredCount.get());
+    }
+
+    /**
+     * Replaces the pending or running query with a new one.
+     *
+     * @param text  Query as typed by the user.
+     * @param delay Time to wait before the query is started.
+     */
+    private void submit(String text, long delay) {
+
+        issuedCount.incrementAndGet();
+
+        cancelQueries();
+
+        currentQuery = new Query(text, generation.incrementAndGet());
+
+        if (delay > 0) {
+            mainHandler.postDelayed(currentQuery, delay);
+        } else {
+            currentQuery.run();
+        }
+    }
+
+    /**
+     * Removes the pending query or interrupts the running one and counts it as cancelled.
+     * A result that is already waiting on the main thread is dropped because its generation is outdated.
+     */
+    private void cancelQueries() {
+
+        Query query = currentQuery;
+
+        if (query == null) {
+            return;
+        }
+
+        currentQuery = null;
+
+        mainHandler.removeCallbacks(query);
+
+        if (query.future != null) {
+            query.future.cancel(true);
+        }
+
+        if (query.settled.compareAndSet(false, true)) {
+            cancelledCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * A single query. Is posted to the main thread once the debounce has passed
+     * and then runs the search on the search executor.
+     */
+    private class Query implements Runnable {
+
+        private final String text;
+        private final long queryGeneration;
+
+        // Makes sure that a query is either counted as delivered or as cancelled
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Future<?> future = null;
+
+        Query(String text, long queryGeneration) {
+
+            this.text = text;
+            this.queryGeneration = queryGeneration;
+        }
+
+        @Override
+        public void run() {
+
+            future = SEARCH_EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    search();
+                }
+            });
+        }
+
+        /**
+         * Runs the query on the search executor and hands its result to the main thread.
+         */
+        private void search() {
+
+            // Skip the query if a newer one has arrived while it was waiting for the executor
+            if (queryGeneration != generation.get()) {
+                return;
+            }
+
+            final ArrayList<SoundObject> results = source.search(text);
+
+            if (Thread.currentThread().isInterrupted() || queryGeneration != generation.get()) {
+                return;
+            }
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+
+                    // A newer query might have been submitted while this result was waiting
+                    if (queryGeneration != generation.get() || !settled.compareAndSet(false, true)) {
+                        return;
+                    }
+
+                    currentQuery = null;
+                    deliveredCount.incrementAndGet();
+                    listener.onResults(text, results);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import java.util.HashMap;
+
+/**
+ * Translates between the resource ids of sounds, which change between builds,
+ * and their resource entry names, which are used as stable keys in the database.
+ */
+public final class SoundKeys {
+
+    // Caches the resource ids that have been resolved in this process
+    private static final HashMap<String, Integer> resourceIds = new HashMap<>();
+
+    private SoundKeys() {
+    }
+
+    /**
+     * Returns the stable key of a sound resource.
+     *
+     * @param context Context to access the resources.
+     * @param soundId Resource id of the sound.
+     * @return The resource entry name or null if the resource does not exist.
+     */
+    public static String keyOf(Context context, int soundId) {
+
+        try {
+            return context.getResources().getResourceEntryName(soundId);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the resource id of the sound with the given key in the current build.
+     *
+     * @param context  Context to access the resources.
+     * @param soundKey Stable key of the sound.
+     * @return The resource id or null if the build does not contain the sound.
+     */
+    public static synchronized Integer resolve(Context context, String soundKey) {
+
+        if (soundKey == null) {
+            return null;
+        }
+
+        Integer soundId = resourceIds.get(soundKey);
+
+        if (soundId == null) {
+
+            int identifier = context.getResources()
+                                    .getIdentifier(soundKey, "raw", context.getPackageName());
+
+            if (identifier == 0) {
+                return null;
+            }
+
+            soundId = identifier;
+            resourceIds.put(soundKey, soundId);
+        }
+
+        return soundId;
+    }
+}
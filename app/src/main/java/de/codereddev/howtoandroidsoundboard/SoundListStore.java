@@ -0,0 +1,349 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the PagedSoundLists of the catalog and the favorites in the background and keeps the last one of each.
+ * Every list is tagged with the version of the SoundRepository data it has been read from.
+ * As long as that version has not changed the cached list is handed out again, so recreating an activity,
+ * e.g. after a rotation, or bringing it back to the foreground does not read anything.
+ * Subscribers receive every new list on the main thread, a changed catalog is pushed to them without asking.
+ * Is designed as a Singleton, so the cached lists outlive the activities. Must be used from the main thread.
+ */
+public class SoundListStore implements SoundRepository.Observer {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = SoundListStore.class.getSimpleName();
+
+    // Define the ids of the lists the store holds
+    public static final int CATALOG = 0;
+    public static final int FAVORITES = 1;
+    private static final int LIST_COUNT = 2;
+
+    // Marks a list that is not being loaded
+    private static final long NOT_LOADING = -1;
+
+    // Define a private variable that holds the store instance
+    private static volatile SoundListStore instance = null;
+
+    /**
+     * Gets notified on the main thread when a new list is available.
+     */
+    public interface Subscriber {
+
+        /**
+         * Gets called when a list has been loaded or when the cached list is requested again.
+         *
+         * @param list List whose first pages have been loaded.
+         */
+        void onSoundListChanged(PagedSoundList list);
+    }
+
+    private final SoundRepository soundRepository;
+
+    // Delivers the loaded lists
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Entry[] entries = new Entry[LIST_COUNT];
+
+    // Counters that describe the work of the store
+    private int loads = 0;
+    private int cacheHits = 0;
+
+    private SoundListStore(Context context) {
+
+        soundRepository = SoundRepository.getInstance(context);
+
+        for (int i = 0; i < LIST_COUNT; i++) {
+            entries[i] = new Entry();
+        }
+
+        // Reload the lists of the subscribers once the catalog has been synced
+        soundRepository.addObserver(this);
+    }
+
+    /**
+     * Returns the process-wide instance of the store. Creates it if necessary.
+     *
+     * @param context Context to access the SoundRepository.
+     * @return The current instance of the store.
+     */
+    public static SoundListStore getInstance(Context context) {
+
+        // Double checked locking keeps the common path free of synchronisation
+        if (instance == null) {
+
+            synchronized (SoundListStore.class) {
+
+                if (instance == null) {
+                    instance = new SoundListStore(context.getApplicationContext());
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Subscribes to a list. The cached list is delivered right away if it is still current,
+     * otherwise it is loaded and delivered afterwards.
+     *
+     * @param listId     CATALOG or FAVORITES.
+     * @param subscriber Subscriber to add.
+     */
+    public void subscribe(int listId, Subscriber subscriber) {
+
+        Entry entry = entries[listId];
+
+        if (!entry.subscribers.contains(subscriber)) {
+            entry.subscribers.add(subscriber);
+        }
+
+        if (isCurrent(listId)) {
+
+            cacheHits++;
+            subscriber.onSoundListChanged(entry.list);
+            return;
+        }
+
+        load(listId);
+    }
+
+    public void unsubscribe(int listId, Subscriber subscriber) {
+        entries[listId].subscribers.remove(subscriber);
+    }
+
+    /**
+     * Delivers a list to the subscribers again. It is only loaded again if its data has changed
+     * or if it has been released, e.g. because search results have been displayed in its place.
+     *
+     * @param listId CATALOG or FAVORITES.
+     */
+    public void refresh(int listId) {
+
+        if (isCurrent(listId)) {
+
+            cacheHits++;
+            deliver(entries[listId]);
+            return;
+        }
+
+        load(listId);
+    }
+
+    /**
+     * Creates the favorites list of the current snapshot right away and caches it.
+     * The pages around the position are read from memory, so the caller can display the list
+     * at once, e.g. to animate a single change. The subscribers are not notified.
+     *
+     * @param position Position the user is looking at.
+     * @return The list of the favorites.
+     */
+    public PagedSoundList createFavorites(int position) {
+
+        Entry entry = entries[FAVORITES];
+
+        PagedSoundList list = new PagedSoundList(soundRepository.getFavoritesSource());
+        list.loadInitial(position);
+
+        // A load that is still running has read an older snapshot
+        entry.generation++;
+        entry.loadingVersion = NOT_LOADING;
+
+        entry.list = list;
+        entry.version = soundRepository.getFavoritesVersion();
+
+        return list;
+    }
+
+    /**
+     * Drops a cached list. Should be called when the activity that displays it is finishing,
+     * so the list does not stay in memory while nothing displays it.
+     *
+     * @param listId CATALOG or FAVORITES.
+     */
+    public void clear(int listId) {
+
+        Entry entry = entries[listId];
+
+        // Discard a load that is still running
+        entry.generation++;
+        entry.loadingVersion = NOT_LOADING;
+
+        if (entry.list != null) {
+
+            entry.list.release();
+            entry.list = null;
+        }
+    }
+
+    /**
+     * @return The number of lists that have been loaded in the background.
+     */
+    public int getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * Writes the counters into the log.
+     */
+    public void log() {
+        Log.d(LOG_TAG, "Lists loaded: " + loads + ", served from cache: " + cacheHits);
+    }
+
+    @Override
+    public void onFavoriteAdded(SoundObject soundObject, int position) {
+        // The favorites activity applies the change itself and caches the result with createFavorites()
+    }
+
+    @Override
+    public void onFavoriteRemoved(SoundObject soundObject, int position) {
+        // The favorites activity applies the change itself and caches the result with createFavorites()
+    }
+
+    @Override
+    public void onCatalogChanged() {
+
+        for (int listId = 0; listId < LIST_COUNT; listId++) {
+
+            if (!entries[listId].subscribers.isEmpty()) {
+                load(listId);
+            } else {
+                clear(listId);
+            }
+        }
+    }
+
+    @Override
+    public void onFavoritesLoaded() {
+        // Lists only read the favorites snapshot once it has been loaded
+    }
+
+    /**
+     * Checks if the cached list can still be displayed.
+     *
+     * @param listId CATALOG or FAVORITES.
+     * @return True if the list exists, has not been released and its data has not changed since it has been read.
+     */
+    private boolean isCurrent(int listId) {
+
+        Entry entry = entries[listId];
+
+        return entry.list != null && !entry.list.isReleased() && entry.version == currentVersion(listId);
+    }
+
+    /**
+     * Loads a list in the background unless the current version is being loaded already.
+     *
+     * @param listId CATALOG or FAVORITES.
+     */
+    private void load(final int listId) {
+
+        Entry entry = entries[listId];
+
+        final long version = currentVersion(listId);
+
+        if (entry.loadingVersion == version) {
+            return;
+        }
+
+        entry.loadingVersion = version;
+
+        final int generation = ++entry.generation;
+        final PagedSoundList.Source source = listId == CATALOG
+                                             ? soundRepository.getCatalogSource()
+                                             : soundRepository.getFavoritesSource();
+
+        loads++;
+
+        entry.loadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                final PagedSoundList list = new PagedSoundList(source);
+                list.loadInitial();
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(listId, generation, version, list);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(int listId, int generation, long version, PagedSoundList list) {
+
+        Entry entry = entries[listId];
+
+        // The load has been superseded or cleared in the meantime
+        if (generation != entry.generation) {
+
+            list.release();
+            return;
+        }
+
+        entry.loadingVersion = NOT_LOADING;
+
+        // The data has changed while the list was read
+        if (version != currentVersion(listId)) {
+
+            list.release();
+            load(listId);
+            return;
+        }
+
+        if (entry.list != null && entry.list != list) {
+            entry.list.release();
+        }
+
+        entry.list = list;
+        entry.version = version;
+
+        deliver(entry);
+    }
+
+    private void deliver(Entry entry) {
+
+        // A subscriber might unsubscribe while the list is delivered
+        for (Subscriber subscriber : new ArrayList<>(entry.subscribers)) {
+            subscriber.onSoundListChanged(entry.list);
+        }
+    }
+
+    private long currentVersion(int listId) {
+        return listId == CATALOG ? soundRepository.getCatalogVersion() : soundRepository.getFavoritesVersion();
+    }
+
+    /**
+     * The cached list, the running load and the subscribers of one list.
+     */
+    private static class Entry {
+
+        private PagedSoundList list = null;
+
+        // Version of the data the cached list has been read from
+        private long version = 0;
+
+        // Version of the data that is being loaded
+        private long loadingVersion = NOT_LOADING;
+
+        // Is increased by every load, so only the result of the latest one is kept
+        private int generation = 0;
+
+        private final ArrayList<Subscriber> subscribers = new ArrayList<>();
+
+        // Reads the first pages of the list off the main thread
+        // Every list has its own thread, so loading the catalog never delays the favorites.
+        // A superseded load only delays the next load of the same list.
+        private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    }
+}
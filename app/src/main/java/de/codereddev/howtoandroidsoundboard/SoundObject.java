@@ -8,9 +8,12 @@ public class SoundObject {
      * need for a sound button like a name and the soundID/itemId.
      * The itemId will be the resource id for a raw .mp3
      * file that is stored in the raw folder in the projects res folder.
+     * The itemKey is the resource entry name of that file. Unlike the itemId
+     * it does not change between builds and is used to store the sound.
      */
     private String itemName;
     private Integer itemId;
+    private String itemKey;
 
     /**
      * Creates an object that holds references to the resources that define a sound (button).
@@ -19,8 +22,20 @@ public class SoundObject {
      */
     public SoundObject(String itemName, Integer itemId) {
 
+        this(itemName, itemId, null);
+    }
+
+    /**
+     * Creates an object that holds references to the resources that define a sound (button).
+     * @param itemName Name of the sound.
+     * @param itemId Resource id of the sound file.
+     * @param itemKey Resource entry name of the sound file.
+     */
+    public SoundObject(String itemName, Integer itemId, String itemKey) {
+
         this.itemName = itemName;
         this.itemId = itemId;
+        this.itemKey = itemKey;
     }
 
     public String getItemName() {
@@ -32,4 +47,9 @@ public class SoundObject {
 
         return itemId;
     }
+
+    public String getItemKey() {
+
+        return itemKey;
+    }
 }
@@ -0,0 +1,515 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaPlayer;
+import android.media.SoundPool;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+import java.io.IOException;
+
+/**
+ * PlaybackEngine that decodes sounds ahead of time into a SoundPool.
+ * Once a sound is loaded it starts with a single call to {@link SoundPool#play}.
+ * Sounds that exceed the configured size or duration are played by a reused MediaPlayer
+ * because SoundPool has to hold the whole decoded sound in memory.
+ * The decoded samples are bounded by a byte budget, the least recently used ones are unloaded first.
+ * Up to the configured number of voices can sound at the same time. If all of them are in use
+ * the oldest sound is cut off.
+ */
+public class SoundPoolEngine implements PlaybackEngine, VoiceAllocator.OnVoiceStolenListener {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = SoundPoolEngine.class.getSimpleName();
+
+    // Define the default limits that decide if a sound is played through the fallback
+    public static final int DEFAULT_MAX_VOICES = 6;
+    public static final long DEFAULT_MAX_SAMPLE_BYTES = 512 * 1024;
+    public static final long DEFAULT_MAX_SAMPLE_DURATION_MS = 10000;
+
+    // Define the default number of bytes the decoded samples may occupy
+    public static final int DEFAULT_MAX_RESIDENT_BYTES = 16 * 1024 * 1024;
+
+    // Define the size of one second of decoded audio in the largest format SoundPool produces, 44.1 kHz 16 bit stereo
+    private static final int DECODED_BYTES_PER_SECOND = 44100 * 2 * 2;
+
+    // Define a value that is used if a value could not be found in a SparseArray
+    private static final int NOT_FOUND = -1;
+
+    private final int maxVoices;
+    private final long maxSampleBytes;
+    private final long maxSampleDurationMs;
+
+    // Decides which sound is cut off if too many sounds are played at the same time
+    private final VoiceAllocator voiceAllocator;
+
+    private SoundPool soundPool;
+
+    // Maps a sound resource id to the sample id given by the SoundPool
+    private final SparseIntArray sampleIds = new SparseIntArray();
+
+    // Holds all sample ids that have been decoded completely
+    private final SparseBooleanArray loadedSamples = new SparseBooleanArray();
+
+    // Holds all sample ids that should be played as soon as they are decoded
+    private final SparseBooleanArray pendingSamples = new SparseBooleanArray();
+
+    // Holds the loaded sounds in least recently used order and unloads them when the budget is exceeded
+    private final LruCache<Integer, ResidentSample> residentSamples;
+
+    // Counts the samples that have been unloaded to stay within the budget or because they were evicted
+    private long unloadedCount = 0;
+
+    // Holds all sound resource ids that have to be played by a MediaPlayer
+    private final SparseBooleanArray fallbackSounds = new SparseBooleanArray();
+
+    // Maps a sound resource id to its duration in milliseconds
+    private final SparseIntArray durations = new SparseIntArray();
+
+    /**
+     * Creates a SoundPoolEngine with DEFAULT_MAX_VOICES voices and the default limits.
+     */
+    public SoundPoolEngine() {
+        this(DEFAULT_MAX_VOICES, DEFAULT_MAX_SAMPLE_BYTES, DEFAULT_MAX_SAMPLE_DURATION_MS,
+             DEFAULT_MAX_RESIDENT_BYTES);
+    }
+
+    /**
+     * Creates a SoundPoolEngine.
+     *
+     * @param maxVoices           Maximum number of sounds that may be played at the same time.
+     * @param maxSampleBytes      Sounds with a larger file size are played by a MediaPlayer.
+     * @param maxSampleDurationMs Sounds with a longer duration are played by a MediaPlayer.
+     * @param maxResidentBytes    Maximum number of bytes the decoded samples may occupy.
+     */
+    public SoundPoolEngine(int maxVoices, long maxSampleBytes, long maxSampleDurationMs, int maxResidentBytes) {
+
+        this.maxVoices = maxVoices;
+        this.maxSampleBytes = maxSampleBytes;
+        this.maxSampleDurationMs = maxSampleDurationMs;
+        // A sound without a known duration can not be longer than the SoundPool allows
+        this.voiceAllocator = new VoiceAllocator(maxVoices, maxSampleDurationMs, this);
+
+        this.residentSamples = new LruCache<Integer, ResidentSample>(maxResidentBytes) {
+            @Override
+            protected int sizeOf(Integer key, ResidentSample value) {
+                return value.byteCount;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, ResidentSample oldValue,
+                                        ResidentSample newValue) {
+                unloadSample(key, oldValue.sampleId);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void preload(Context context, int soundId) {
+
+        if (fallbackSounds.get(soundId) || sampleIds.get(soundId, NOT_FOUND) != NOT_FOUND) {
+            return;
+        }
+
+        // Check if the sound fits into the SoundPool
+        if (!fitsIntoPool(context, soundId)) {
+
+            Log.d(LOG_TAG, "Sound exceeds the SoundPool limits and uses the fallback: " + soundId);
+            fallbackSounds.put(soundId, true);
+            return;
+        }
+
+        // Load the sound into the SoundPool. Decoding is done asynchronously by the SoundPool.
+        int sampleId = getSoundPool().load(context, soundId, 1);
+        sampleIds.put(soundId, sampleId);
+
+        // Unloads the least recently used samples if the new one exceeds the budget
+        if (sampleId != 0) {
+            residentSamples.put(soundId, new ResidentSample(sampleId, estimateDecodedBytes(soundId)));
+        }
+    }
+
+    @Override
+    public synchronized void play(Context context, int soundId) {
+
+        preload(context, soundId);
+
+        if (fallbackSounds.get(soundId)) {
+            playWithMediaPlayer(context, soundId);
+            return;
+        }
+
+        int sampleId = sampleIds.get(soundId, NOT_FOUND);
+
+        if (sampleId == NOT_FOUND || sampleId == 0) {
+            Log.e(LOG_TAG, "Failed to load sound into the SoundPool: " + soundId);
+            return;
+        }
+
+        // Mark the sample as recently used
+        residentSamples.get(soundId);
+
+        // Play the sample right away or as soon as the SoundPool finished decoding it
+        if (loadedSamples.get(sampleId)) {
+            playSample(soundId, sampleId);
+        } else {
+            pendingSamples.put(sampleId, true);
+        }
+    }
+
+    @Override
+    public synchronized void evict(int soundId) {
+        residentSamples.remove(soundId);
+    }
+
+    @Override
+    public synchronized void stop() {
+
+        for (VoiceAllocator.Voice voice : voiceAllocator.getVoices()) {
+
+            if (voice.active) {
+                onVoiceStolen(voice);
+                voiceAllocator.free(voice);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+
+        if (soundPool != null) {
+
+            soundPool.release();
+            soundPool = null;
+        }
+
+        // The samples are gone with the SoundPool, this only empties the budget
+        residentSamples.evictAll();
+
+        for (VoiceAllocator.Voice voice : voiceAllocator.getVoices()) {
+
+            if (voice.player != null) {
+                voice.player.release();
+                voice.player = null;
+            }
+
+            voiceAllocator.free(voice);
+        }
+
+        sampleIds.clear();
+        loadedSamples.clear();
+        pendingSamples.clear();
+        fallbackSounds.clear();
+        durations.clear();
+    }
+
+    @Override
+    public synchronized void onVoiceStolen(VoiceAllocator.Voice voice) {
+
+        if (voice.streamId != 0) {
+
+            if (soundPool != null) {
+                soundPool.stop(voice.streamId);
+            }
+        } else if (voice.player != null) {
+
+            // Resetting is allowed in every state and keeps the MediaPlayer for reuse
+            voice.player.reset();
+        }
+    }
+
+    /**
+     * @return The number of sounds that are currently playing.
+     */
+    public synchronized int getActiveVoiceCount() {
+        return voiceAllocator.getActiveVoiceCount();
+    }
+
+    /**
+     * @return The number of sounds that have been cut off to make room for a new sound.
+     */
+    public synchronized long getStolenVoiceCount() {
+        return voiceAllocator.getStolenVoiceCount();
+    }
+
+    /**
+     * @return A description of the voices that can be displayed on the debug screen.
+     */
+    public synchronized String dump() {
+
+        return "voices: " + maxVoices + ", active: " + voiceAllocator.getActiveVoiceCount()
+                + ", stolen: " + voiceAllocator.getStolenVoiceCount()
+                + ", media players: " + voiceAllocator.getAllocatedPlayerCount() + "\n"
+                + "samples KB: " + residentSamples.size() / 1024 + " of " + residentSamples.maxSize() / 1024
+                + ", loaded: " + residentSamples.putCount() + ", unloaded: " + unloadedCount + "\n";
+    }
+
+    /**
+     * Unloads a sample from the SoundPool and forgets it. Is called by the budget.
+     *
+     * @param soundId  Resource id of the sound.
+     * @param sampleId Sample id given by the SoundPool.
+     */
+    private void unloadSample(int soundId, int sampleId) {
+
+        // The SoundPool might have been released already
+        if (soundPool != null) {
+
+            soundPool.unload(sampleId);
+            unloadedCount++;
+        }
+
+        sampleIds.delete(soundId);
+        loadedSamples.delete(sampleId);
+        pendingSamples.delete(sampleId);
+    }
+
+    /**
+     * Estimates the memory the SoundPool needs for the decoded sound.
+     * Assumes the longest allowed duration if the duration is unknown.
+     *
+     * @param soundId Resource id of the sound.
+     * @return The estimated number of bytes.
+     */
+    private int estimateDecodedBytes(int soundId) {
+
+        long durationMs = durations.get(soundId, NOT_FOUND);
+
+        if (durationMs < 0) {
+            durationMs = maxSampleDurationMs;
+        }
+
+        return (int) Math.max(1, durationMs * DECODED_BYTES_PER_SECOND / 1000);
+    }
+
+    /**
+     * Starts a decoded sample on a free or stolen voice.
+     *
+     * @param soundId  Resource id of the sound.
+     * @param sampleId Sample id given by the SoundPool.
+     */
+    private void playSample(int soundId, int sampleId) {
+
+        LatencyTracer.getInstance().mark(soundId, LatencyTracer.Stage.PREPARE);
+
+        VoiceAllocator.Voice voice =
+            voiceAllocator.acquire(soundId, 1f, durations.get(soundId, NOT_FOUND));
+
+        int streamId = soundPool.play(sampleId, voice.volume, voice.volume, 1, 0, 1f);
+
+        if (streamId == 0) {
+            Log.e(LOG_TAG, "SoundPool failed to play sample: " + sampleId);
+            voiceAllocator.free(voice);
+            return;
+        }
+
+        voice.streamId = streamId;
+
+        LatencyTracer.getInstance().mark(soundId, LatencyTracer.Stage.START);
+    }
+
+    /**
+     * Plays a sound that is too large for the SoundPool on the MediaPlayer of a free or stolen voice.
+     * The MediaPlayer of a voice is only created once and reused for every following sound.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     */
+    private void playWithMediaPlayer(Context context, int soundId) {
+
+        final VoiceAllocator.Voice voice =
+            voiceAllocator.acquire(soundId, 1f, durations.get(soundId, NOT_FOUND));
+
+        AssetFileDescriptor afd = null;
+
+        try {
+
+            if (voice.player == null) {
+
+                voice.player = new MediaPlayer();
+                voice.player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+                    @Override
+                    public void onCompletion(MediaPlayer mp) {
+                        onVoiceCompleted(voice);
+                    }
+                });
+            } else {
+
+                voice.player.reset();
+            }
+
+            afd = context.getResources().openRawResourceFd(soundId);
+
+            voice.player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            voice.player.prepare();
+
+            // The prepared MediaPlayer knows the duration even if the metadata did not contain it
+            if (durations.get(soundId, NOT_FOUND) == NOT_FOUND && voice.player.getDuration() > 0) {
+
+                durations.put(soundId, voice.player.getDuration());
+                voice.endTime = voice.startTime + voice.player.getDuration();
+            }
+
+            LatencyTracer.getInstance().mark(soundId, LatencyTracer.Stage.PREPARE);
+
+            voice.player.start();
+
+            LatencyTracer.getInstance().mark(soundId, LatencyTracer.Stage.START);
+
+        } catch (IOException | IllegalStateException | Resources.NotFoundException e) {
+
+            Log.e(LOG_TAG, "Failed to play sound with MediaPlayer: " + e.getMessage());
+            voiceAllocator.free(voice);
+        } finally {
+
+            try {
+                if (afd != null) {
+                    afd.close();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to close AssetFileDescriptor: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets called when the MediaPlayer of a voice has played its sound to the end.
+     *
+     * @param voice Voice that has completed.
+     */
+    private synchronized void onVoiceCompleted(VoiceAllocator.Voice voice) {
+        voiceAllocator.free(voice);
+    }
+
+    /**
+     * Returns the SoundPool or creates it if necessary.
+     *
+     * @return The SoundPool used by the engine.
+     */
+    private SoundPool getSoundPool() {
+
+        if (soundPool == null) {
+
+            // SoundPool.Builder is only available since Android 5 (Lollipop)
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+
+                AudioAttributes attributes = new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_GAME)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build();
+
+                soundPool = new SoundPool.Builder()
+                        .setMaxStreams(maxVoices)
+                        .setAudioAttributes(attributes)
+                        .build();
+            } else {
+
+                //noinspection deprecation
+                soundPool = new SoundPool(maxVoices, AudioManager.STREAM_MUSIC, 0);
+            }
+
+            soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+                @Override
+                public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                    onSampleLoaded(sampleId, status);
+                }
+            });
+        }
+
+        return soundPool;
+    }
+
+    /**
+     * Gets called by the SoundPool when a sample has been decoded.
+     *
+     * @param sampleId Sample id given by the SoundPool.
+     * @param status   Status of the load operation. 0 means success.
+     */
+    private synchronized void onSampleLoaded(int sampleId, int status) {
+
+        if (status != 0) {
+            Log.e(LOG_TAG, "SoundPool failed to decode sample: " + sampleId);
+            pendingSamples.delete(sampleId);
+            return;
+        }
+
+        loadedSamples.put(sampleId, true);
+
+        // Play the sample if the user tapped it while it was decoding
+        if (pendingSamples.get(sampleId)) {
+            pendingSamples.delete(sampleId);
+            playSample(sampleIds.keyAt(sampleIds.indexOfValue(sampleId)), sampleId);
+        }
+    }
+
+    /**
+     * Checks if a sound is small and short enough to be decoded into the SoundPool.
+     * Also remembers the duration of the sound to know when its voice is free again.
+     *
+     * @param context Context to access the sound resource.
+     * @param soundId Resource id of the sound.
+     * @return True if the sound does not exceed the configured limits.
+     */
+    private boolean fitsIntoPool(Context context, int soundId) {
+
+        AssetFileDescriptor afd = null;
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+
+        try {
+
+            afd = context.getResources().openRawResourceFd(soundId);
+
+            retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+
+            if (duration == null) {
+                return afd.getLength() <= maxSampleBytes;
+            }
+
+            durations.put(soundId, Integer.parseInt(duration));
+
+            return afd.getLength() <= maxSampleBytes
+                    && Long.parseLong(duration) <= maxSampleDurationMs;
+
+        } catch (Resources.NotFoundException | IllegalArgumentException e) {
+
+            // The resource is compressed or can not be read so the MediaPlayer has to take care of it
+            Log.e(LOG_TAG, "Failed to read sound metadata: " + e.getMessage());
+            return false;
+        } finally {
+
+            retriever.release();
+
+            try {
+                if (afd != null) {
+                    afd.close();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to close AssetFileDescriptor: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A sample that is held by the SoundPool and the memory it is estimated to occupy.
+     */
+    private static class ResidentSample {
+
+        final int sampleId;
+        final int byteCount;
+
+        ResidentSample(int sampleId, int byteCount) {
+
+            this.sampleId = sampleId;
+            this.byteCount = byteCount;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Warms the PlaybackEngine for the sounds that are visible in the grid and the next rows.
+ * Only a limited number of preloads is handed to the PlaybackDispatcher at a time and
+ * sounds that scroll out of the window before their turn are dropped,
+ * so flinging through a large catalog can not flood the decoder.
+ * Prefetched sounds that end up far outside the window are evicted from the engine again,
+ * so they do not keep their memory until the engine is released.
+ */
+public class SoundPrefetcher extends RecyclerView.OnScrollListener
+    implements PlaybackDispatcher.PreloadCallback {
+
+    // Define the number of rows below the visible ones that are prefetched
+    public static final int ROWS_AHEAD = 2;
+
+    // Define the maximum number of preloads that may wait for or run on the playback thread
+    public static final int MAX_IN_FLIGHT = 2;
+
+    // Define the number of rows above and below the window whose prefetched sounds are kept
+    public static final int ROWS_KEPT = 6;
+
+    private final Context context;
+    private final GridLayoutManager layoutManager;
+    private final SoundboardRecyclerAdapter adapter;
+
+    // Continues the prefetch on the main thread when a preload has finished
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Holds the sound ids inside the current window that still have to be preloaded
+    private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+    // Holds all sound ids of the current window. Is read by the playback thread.
+    private final SparseBooleanArray window = new SparseBooleanArray();
+
+    // Holds all sound ids that have been preloaded already
+    private final SparseBooleanArray prefetched = new SparseBooleanArray();
+
+    private int inFlight = 0;
+
+    // Release generation of the PlaybackDispatcher the prefetched sounds belong to
+    private int releaseGeneration;
+
+    /**
+     * Creates a SoundPrefetcher and attaches it to a RecyclerView.
+     *
+     * @param context      Context to access the sound resources.
+     * @param recyclerView RecyclerView that displays the sounds.
+     */
+    public SoundPrefetcher(Context context, RecyclerView recyclerView) {
+
+        this.context = context.getApplicationContext();
+        this.layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        this.adapter = (SoundboardRecyclerAdapter) recyclerView.getAdapter();
+        this.releaseGeneration = PlaybackDispatcher.getInstance().getReleaseGeneration();
+
+        recyclerView.addOnScrollListener(this);
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        refresh();
+    }
+
+    /**
+     * Recalculates the window of sounds to prefetch.
+     * Should be called on the main thread after the displayed data has changed.
+     */
+    public void refresh() {
+
+        forgetReleasedSounds();
+
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+
+        // Nothing has been laid out yet so assume the first rows are about to be bound
+        if (first == RecyclerView.NO_POSITION) {
+            first = 0;
+            last = layoutManager.getSpanCount() * ROWS_AHEAD - 1;
+        }
+
+        last = Math.min(last + layoutManager.getSpanCount() * ROWS_AHEAD, adapter.getItemCount() - 1);
+
+        evictDistantSounds(first, last);
+
+        // Drop everything that is not part of the new window anymore
+        queue.clear();
+
+        synchronized (window) {
+
+            window.clear();
+
+            for (int position = first; position <= last; position++) {
+
+                SoundObject soundObject = adapter.getSoundObject(position);
+
+                // The page of the sound is still loading, it is prefetched once the page has been bound
+                if (soundObject == null) {
+                    continue;
+                }
+
+                int soundId = soundObject.getItemId();
+                window.put(soundId, true);
+
+                if (!prefetched.get(soundId)) {
+                    queue.add(soundId);
+                }
+            }
+        }
+
+        submit();
+    }
+
+    /**
+     * Hands preloads to the PlaybackDispatcher until the budget is used up.
+     */
+    private void submit() {
+
+        forgetReleasedSounds();
+
+        while (inFlight < MAX_IN_FLIGHT && !queue.isEmpty()) {
+
+            int soundId = queue.poll();
+
+            if (prefetched.get(soundId)) {
+                continue;
+            }
+
+            if (!PlaybackDispatcher.getInstance().dispatchPreload(context, soundId, this)) {
+                return;
+            }
+
+            prefetched.put(soundId, true);
+            inFlight++;
+        }
+    }
+
+    /**
+     * Evicts the prefetched sounds that are more than ROWS_KEPT rows away from the window.
+     * The rows in between are kept, so scrolling back and forth a little does not load them again.
+     *
+     * @param first First position of the window.
+     * @param last  Last position of the window.
+     */
+    private void evictDistantSounds(int first, int last) {
+
+        if (prefetched.size() == 0) {
+            return;
+        }
+
+        int keptItems = layoutManager.getSpanCount() * ROWS_KEPT;
+        int keptLast = Math.min(last + keptItems, adapter.getItemCount() - 1);
+
+        SparseBooleanArray keptSounds = new SparseBooleanArray();
+
+        for (int position = Math.max(0, first - keptItems); position <= keptLast; position++) {
+
+            SoundObject soundObject = adapter.getSoundObject(position);
+
+            if (soundObject != null) {
+                keptSounds.put(soundObject.getItemId(), true);
+            }
+        }
+
+        List<Integer> distantSounds = new ArrayList<>();
+
+        for (int i = 0; i < prefetched.size(); i++) {
+
+            if (!keptSounds.get(prefetched.keyAt(i))) {
+                distantSounds.add(prefetched.keyAt(i));
+            }
+        }
+
+        // Try again on the next scroll if the playback queue is full
+        if (distantSounds.isEmpty() || !PlaybackDispatcher.getInstance().dispatchEvict(distantSounds)) {
+            return;
+        }
+
+        for (int soundId : distantSounds) {
+            prefetched.delete(soundId);
+        }
+    }
+
+    /**
+     * Forgets the prefetched sounds if the engine has been released since they have been preloaded,
+     * so they are preloaded again when they are in the window.
+     */
+    private void forgetReleasedSounds() {
+
+        int currentGeneration = PlaybackDispatcher.getInstance().getReleaseGeneration();
+
+        if (currentGeneration != releaseGeneration) {
+
+            releaseGeneration = currentGeneration;
+            prefetched.clear();
+        }
+    }
+
+    @Override
+    public boolean isStillNeeded(int soundId) {
+
+        synchronized (window) {
+            return window.get(soundId);
+        }
+    }
+
+    @Override
+    public void onPreloadFinished(final int soundId, final boolean skipped) {
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+
+                inFlight--;
+
+                // Give the sound another chance if it scrolls into the window again
+                if (skipped) {
+                    prefetched.delete(soundId);
+                }
+
+                submit();
+            }
+        });
+    }
+}
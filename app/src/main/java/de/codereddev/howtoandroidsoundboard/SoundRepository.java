@@ -0,0 +1,779 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the catalog and the favorites of the whole process in memory.
+ * Both are immutable snapshots that are replaced on every change, so they can be read from any thread
+ * without locking. All writes go through this class and are applied to the snapshots right away.
+ * Favorite changes are persisted write-behind: they are queued, repeated toggles of the same sound
+ * cancel each other out and the queue is written to the DatabaseHandler in one transaction
+ * in the background, at the latest when the app goes to the background.
+ * Observers are told about every change on the main thread and only receive what has changed.
+ * Is designed as a Singleton to share the snapshots between all activities.
+ */
+public class SoundRepository {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = SoundRepository.class.getSimpleName();
+
+    // Define a private variable that holds the repository instance
+    private static volatile SoundRepository instance = null;
+
+    /**
+     * Gets notified on the main thread when the catalog or the favorites change.
+     */
+    public interface Observer {
+
+        /**
+         * Gets called when a sound has been added to the favorites.
+         *
+         * @param soundObject Sound that has been added.
+         * @param position    Position of the sound in the new favorites snapshot.
+         */
+        void onFavoriteAdded(SoundObject soundObject, int position);
+
+        /**
+         * Gets called when a sound has been removed from the favorites.
+         *
+         * @param soundObject Sound that has been removed.
+         * @param position    Position the sound had in the old favorites snapshot.
+         */
+        void onFavoriteRemoved(SoundObject soundObject, int position);
+
+        /**
+         * Gets called when the catalog has been synced with the shipped sounds and has changed.
+         */
+        void onCatalogChanged();
+
+        /**
+         * Gets called when the favorites snapshot has been read from the database for the first time.
+         */
+        void onFavoritesLoaded();
+    }
+
+    // Sorts the favorites like the name index of the FAVORITES table does
+    private static final Comparator<SoundObject> FAVORITES_ORDER = new Comparator<SoundObject>() {
+        @Override
+        public int compare(SoundObject first, SoundObject second) {
+
+            int result = first.getItemName().compareTo(second.getItemName());
+
+            if (result != 0 || first.getItemKey() == null || second.getItemKey() == null) {
+                return result;
+            }
+
+            return first.getItemKey().compareTo(second.getItemKey());
+        }
+    };
+
+    // Define the time a favorite change may wait to be written together with further changes
+    public static final long FLUSH_DELAY_MS = 1000;
+
+    // Define the number of queued changes that are written right away
+    public static final int MAX_PENDING_WRITES = 64;
+
+    private final DatabaseHandler databaseHandler;
+
+    // Loads the snapshots and persists the changes one after another
+    private final ExecutorService repositoryExecutor = Executors.newSingleThreadExecutor();
+
+    // Delivers the changes to the observers
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+
+    // Hold the snapshots or null while they have not been loaded yet
+    private volatile List<SoundObject> catalog = null;
+    private volatile List<SoundObject> favorites = null;
+
+    // Are increased by every change of the data, so lists read from an older version can be recognised
+    private volatile long catalogVersion = 0;
+    private volatile long favoritesVersion = 0;
+
+    // Holds the sound ids of all favorites, so the grid can look up the favorite state of every item while binding
+    // Every write holds the lock: a set read from the database is built completely before it replaces this one,
+    // a single change is applied in place by addFavorite() or removeFavorite() on the main thread.
+    // So the main thread may read it without the lock, every other thread has to take it.
+    private volatile IntHashSet favoriteIds = new IntHashSet();
+
+    // Is set while the catalog is loaded in the background
+    private boolean catalogLoading = false;
+
+    // Holds the favorite changes that have not been written yet by sound key
+    private final LinkedHashMap<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+
+    // Is set while a flush is posted to the main thread
+    private boolean flushScheduled = false;
+
+    // Counters that describe the work of the write queue
+    private int queuedWrites = 0;
+    private int mergedWrites = 0;
+    private int flushedBatches = 0;
+    private int failedBatches = 0;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private SoundRepository(Context context) {
+
+        this.databaseHandler = DatabaseHandler.getInstance(context);
+
+        // Write the queued favorite changes once no activity of the app is visible anymore
+        if (context instanceof Application) {
+            ((Application) context).registerActivityLifecycleCallbacks(new BackgroundFlusher());
+        }
+
+        // Have the favorites ready before the first favorite is toggled or looked up on the main thread
+        repositoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getFavorites();
+            }
+        });
+    }
+
+    /**
+     * Returns the process-wide instance of the repository. Creates it if necessary.
+     *
+     * @param context Context to access the database.
+     * @return The current instance of the repository.
+     */
+    public static SoundRepository getInstance(Context context) {
+
+        // Double checked locking keeps the common path free of synchronisation
+        if (instance == null) {
+
+            synchronized (SoundRepository.class) {
+
+                if (instance == null) {
+                    instance = new SoundRepository(context.getApplicationContext());
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    public void addObserver(Observer observer) {
+        observers.addIfAbsent(observer);
+    }
+
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Returns a source for a PagedSoundList of the catalog.
+     * Once the catalog snapshot has been loaded the pages are read from memory.
+     * Before that they are read from the database and the snapshot is loaded in the background.
+     *
+     * @return The source of the catalog.
+     */
+    public PagedSoundList.Source getCatalogSource() {
+
+        List<SoundObject> snapshot = catalog;
+
+        if (snapshot != null) {
+            return new SnapshotSource(snapshot);
+        }
+
+        loadCatalogInBackground();
+
+        return databaseHandler.getCatalogSource();
+    }
+
+    /**
+     * Returns a source for a PagedSoundList of the favorites, read from the favorites snapshot.
+     * If the snapshot has not been loaded yet the source loads it when it is read the first time,
+     * which happens on the loader thread.
+     *
+     * @return The source of the favorites.
+     */
+    public PagedSoundList.Source getFavoritesSource() {
+        return new SnapshotSource(favorites);
+    }
+
+    /**
+     * @return The version of the catalog, which changes whenever the catalog has been synced with changes.
+     */
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    /**
+     * @return The version of the favorites, which changes whenever a favorite is added or removed.
+     */
+    public long getFavoritesVersion() {
+        return favoritesVersion;
+    }
+
+    /**
+     * @return The catalog snapshot or null if it has not been loaded yet.
+     */
+    public List<SoundObject> getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Returns the favorites snapshot. It is loaded in the background as soon as the repository is created,
+     * only a call that comes before that has finished reads the database itself.
+     * The database is read without holding the lock, so the main thread is never blocked by another read.
+     *
+     * @return The favorites sorted by name.
+     */
+    public List<SoundObject> getFavorites() {
+
+        List<SoundObject> snapshot = favorites;
+
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        ArrayList<SoundObject> loadedFavorites = new ArrayList<>(databaseHandler.getFavorites());
+
+        synchronized (this) {
+
+            // Another thread might have loaded the favorites in the meantime
+            if (favorites == null) {
+
+                setFavorites(loadedFavorites);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        for (Observer observer : observers) {
+                            observer.onFavoritesLoaded();
+                        }
+                    }
+                });
+            }
+
+            return favorites;
+        }
+    }
+
+    /**
+     * Checks if a sound is a favorite. Loads the favorites on first use.
+     *
+     * @param soundObject Sound to check.
+     * @return True if the sound is a favorite.
+     */
+    public boolean isFavorite(SoundObject soundObject) {
+
+        getFavorites();
+
+        // May be called from any thread, so read the set under the lock its changes are made with
+        synchronized (this) {
+            return favoriteIds.contains(soundObject.getItemId());
+        }
+    }
+
+    /**
+     * Checks if a sound is a favorite without any I/O or allocation, so it can be called for every bind.
+     * Returns false until the favorites have been loaded, observers are told once that has happened.
+     * Must be called on the main thread. It reads the set without the lock, which is only safe because
+     * the set is changed in place on the main thread alone and any other change replaces it as a whole.
+     *
+     * @param soundId Resource id of the sound.
+     * @return True if the sound is a favorite.
+     */
+    public boolean isFavorite(int soundId) {
+        return favoriteIds.contains(soundId);
+    }
+
+    /**
+     * Adds a sound to the favorites and queues the change to be written in the background.
+     * Must be called on the main thread.
+     *
+     * @param soundObject Sound to add.
+     */
+    public void addFavorite(final SoundObject soundObject) {
+
+        int position;
+
+        // Only reads the database if the favorites have not been loaded in the background yet
+        getFavorites();
+
+        synchronized (this) {
+
+            List<SoundObject> snapshot = favorites;
+
+            if (favoriteIds.contains(soundObject.getItemId())) {
+                return;
+            }
+
+            // A sound that is not found is encoded as (-insertion point - 1)
+            int index = Collections.binarySearch(snapshot, soundObject, FAVORITES_ORDER);
+            position = index >= 0 ? index : -index - 1;
+
+            ArrayList<SoundObject> newSnapshot = new ArrayList<>(snapshot.size() + 1);
+            newSnapshot.addAll(snapshot);
+            newSnapshot.add(position, soundObject);
+
+            favorites = Collections.unmodifiableList(newSnapshot);
+            favoriteIds.add(soundObject.getItemId());
+            favoritesVersion++;
+            queueWrite(soundObject, true);
+        }
+
+        for (Observer observer : observers) {
+            observer.onFavoriteAdded(soundObject, position);
+        }
+    }
+
+    /**
+     * Removes a sound from the favorites and queues the change to be written in the background.
+     * Must be called on the main thread.
+     *
+     * @param soundObject Sound to remove.
+     */
+    public void removeFavorite(final SoundObject soundObject) {
+
+        int position = -1;
+
+        // Only reads the database if the favorites have not been loaded in the background yet
+        getFavorites();
+
+        synchronized (this) {
+
+            List<SoundObject> snapshot = favorites;
+
+            if (!favoriteIds.contains(soundObject.getItemId())) {
+                return;
+            }
+
+            ArrayList<SoundObject> newSnapshot = new ArrayList<>(snapshot);
+
+            for (int i = 0; i < newSnapshot.size(); i++) {
+
+                if (newSnapshot.get(i).getItemKey().equals(soundObject.getItemKey())) {
+
+                    position = i;
+                    newSnapshot.remove(i);
+                    break;
+                }
+            }
+
+            favorites = Collections.unmodifiableList(newSnapshot);
+            favoriteIds.remove(soundObject.getItemId());
+            favoritesVersion++;
+            queueWrite(soundObject, false);
+        }
+
+        for (Observer observer : observers) {
+            observer.onFavoriteRemoved(soundObject, position);
+        }
+    }
+
+    /**
+     * Writes all queued favorite changes in one transaction in the background.
+     * Can be called from any thread.
+     */
+    public void flush() {
+
+        final ArrayList<SoundObject> added = new ArrayList<>();
+        final ArrayList<SoundObject> removed = new ArrayList<>();
+
+        if (!takePendingWrites(added, removed)) {
+            return;
+        }
+
+        repositoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                if (!databaseHandler.applyFavoriteChanges(added, removed)) {
+                    requeueWrites(added, removed);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The number of favorite changes that have not been handed to the database yet.
+     */
+    public synchronized int getPendingWriteCount() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * @return The number of batches that have been handed to the database.
+     */
+    public synchronized int getFlushedBatchCount() {
+        return flushedBatches;
+    }
+
+    /**
+     * Writes the counters of the write queue into the log.
+     */
+    public synchronized void log() {
+
+        Log.d(LOG_TAG, "Favorite changes queued: " + queuedWrites + ", merged: " + mergedWrites
+                + ", batches written: " + flushedBatches + ", failed: " + failedBatches
+                + ", pending: " + pendingWrites.size());
+    }
+
+    /**
+     * Brings the catalog in line with the shipped sounds in the background.
+     * If anything has changed the snapshot is reloaded and the observers are notified.
+     */
+    public void syncCatalog() {
+
+        repositoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                if (databaseHandler.syncSoundCollection() == 0) {
+                    return;
+                }
+
+                // Write the queued changes first, so reloading the favorites does not lose them
+                ArrayList<SoundObject> added = new ArrayList<>();
+                ArrayList<SoundObject> removed = new ArrayList<>();
+
+                // A failed batch is queued again and applied to the reloaded favorites below
+                if (takePendingWrites(added, removed) && !databaseHandler.applyFavoriteChanges(added, removed)) {
+                    requeueWrites(added, removed);
+                }
+
+                // Resource ids and names of favorites might have changed as well
+                // Everything is read without holding the lock, so favorite changes on the main thread do not wait
+                List<SoundObject> newCatalog = catalog != null
+                                               ? Collections.unmodifiableList(databaseHandler.getSoundCollection())
+                                               : null;
+                ArrayList<SoundObject> newFavorites = new ArrayList<>(databaseHandler.getFavorites());
+
+                synchronized (SoundRepository.this) {
+
+                    if (newCatalog != null) {
+                        catalog = newCatalog;
+                    }
+
+                    // Changes that have been made while the favorites were read are only queued
+                    applyPendingWrites(newFavorites);
+                    setFavorites(newFavorites);
+
+                    catalogVersion++;
+                    favoritesVersion++;
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        for (Observer observer : observers) {
+                            observer.onCatalogChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the catalog snapshot in the background unless it is loaded or being loaded already.
+     */
+    private synchronized void loadCatalogInBackground() {
+
+        if (catalog != null || catalogLoading) {
+            return;
+        }
+
+        catalogLoading = true;
+
+        repositoryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                List<SoundObject> snapshot = Collections.unmodifiableList(databaseHandler.getSoundCollection());
+
+                synchronized (SoundRepository.this) {
+
+                    catalog = snapshot;
+                    catalogLoading = false;
+                }
+
+                Log.d(LOG_TAG, "Loaded catalog snapshot of " + snapshot.size() + " sounds");
+            }
+        });
+    }
+
+    /**
+     * Queues a favorite change. A change that undoes a queued one removes both,
+     * because every change flips the state the database already has.
+     * Must be called while holding the lock.
+     *
+     * @param soundObject Sound that has been changed.
+     * @param favorite    True if the sound has become a favorite.
+     */
+    private void queueWrite(SoundObject soundObject, boolean favorite) {
+
+        queuedWrites++;
+
+        if (pendingWrites.remove(soundObject.getItemKey()) != null) {
+
+            mergedWrites++;
+            return;
+        }
+
+        pendingWrites.put(soundObject.getItemKey(), new PendingWrite(soundObject, favorite));
+
+        if (pendingWrites.size() >= MAX_PENDING_WRITES) {
+
+            mainHandler.post(flushRunnable);
+
+        } else if (!flushScheduled) {
+
+            flushScheduled = true;
+            mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Queues the changes of a batch the database has failed to write again, so they are retried with the next flush.
+     * The snapshots already show the changes, so they stay in line with what is eventually written.
+     * A change that has been undone in the meantime cancels out with the queued undo like any other change.
+     *
+     * @param added   Sounds that should have been inserted.
+     * @param removed Sounds that should have been deleted.
+     */
+    private synchronized void requeueWrites(List<SoundObject> added, List<SoundObject> removed) {
+
+        failedBatches++;
+
+        Log.w(LOG_TAG, "Queueing " + (added.size() + removed.size()) + " favorite changes again after a failed write");
+
+        for (SoundObject soundObject : added) {
+            queueWrite(soundObject, true);
+        }
+
+        for (SoundObject soundObject : removed) {
+            queueWrite(soundObject, false);
+        }
+    }
+
+    /**
+     * Empties the write queue.
+     *
+     * @param added   Receives the sounds that have to be inserted.
+     * @param removed Receives the sounds that have to be deleted.
+     * @return True if there was anything to write.
+     */
+    private synchronized boolean takePendingWrites(List<SoundObject> added, List<SoundObject> removed) {
+
+        flushScheduled = false;
+        mainHandler.removeCallbacks(flushRunnable);
+
+        if (pendingWrites.isEmpty()) {
+            return false;
+        }
+
+        for (PendingWrite pendingWrite : pendingWrites.values()) {
+
+            if (pendingWrite.favorite) {
+                added.add(pendingWrite.soundObject);
+            } else {
+                removed.add(pendingWrite.soundObject);
+            }
+        }
+
+        pendingWrites.clear();
+        flushedBatches++;
+
+        return true;
+    }
+
+    /**
+     * Applies the queued favorite changes to favorites that have been read from the database.
+     * Must be called while holding the lock.
+     *
+     * @param snapshot Favorites sorted by FAVORITES_ORDER.
+     */
+    private void applyPendingWrites(ArrayList<SoundObject> snapshot) {
+
+        for (PendingWrite pendingWrite : pendingWrites.values()) {
+
+            String key = pendingWrite.soundObject.getItemKey();
+
+            for (int i = 0; i < snapshot.size(); i++) {
+
+                if (snapshot.get(i).getItemKey().equals(key)) {
+
+                    snapshot.remove(i);
+                    break;
+                }
+            }
+
+            if (pendingWrite.favorite) {
+
+                int index = Collections.binarySearch(snapshot, pendingWrite.soundObject, FAVORITES_ORDER);
+                snapshot.add(index >= 0 ? index : -index - 1, pendingWrite.soundObject);
+            }
+        }
+    }
+
+    /**
+     * Replaces the favorites snapshot and the set of their ids. Must be called while holding the lock.
+     *
+     * @param snapshot New favorites sorted by FAVORITES_ORDER.
+     */
+    private void setFavorites(ArrayList<SoundObject> snapshot) {
+
+        IntHashSet ids = new IntHashSet(snapshot.size());
+
+        for (SoundObject soundObject : snapshot) {
+            ids.add(soundObject.getItemId());
+        }
+
+        favoriteIds = ids;
+        favorites = Collections.unmodifiableList(snapshot);
+    }
+
+    /**
+     * A favorite change that has not been written yet.
+     */
+    private static class PendingWrite {
+
+        private final SoundObject soundObject;
+        private final boolean favorite;
+
+        PendingWrite(SoundObject soundObject, boolean favorite) {
+
+            this.soundObject = soundObject;
+            this.favorite = favorite;
+        }
+    }
+
+    /**
+     * Counts the started activities of the app and flushes the write queue when the last one stops,
+     * because the process may be killed at any time once the app is in the background.
+     */
+    private class BackgroundFlusher implements Application.ActivityLifecycleCallbacks {
+
+        private int startedActivities = 0;
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            startedActivities++;
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+
+            // The repository might have been created after the first activity has been started
+            startedActivities = Math.max(0, startedActivities - 1);
+
+            if (startedActivities == 0) {
+
+                flush();
+                log();
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    /**
+     * Reads pages from an immutable snapshot. The row id of a sound is its position in the snapshot.
+     */
+    private class SnapshotSource implements PagedSoundList.Source {
+
+        private List<SoundObject> snapshot;
+
+        /**
+         * Creates a SnapshotSource.
+         *
+         * @param snapshot Snapshot to read. If it is null the favorites snapshot is loaded on first read.
+         */
+        SnapshotSource(List<SoundObject> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public int count() {
+            return getSnapshot().size();
+        }
+
+        @Override
+        public PagedSoundList.Page loadAt(int offset, int limit) {
+
+            List<SoundObject> snapshot = getSnapshot();
+
+            int start = Math.min(offset, snapshot.size());
+            int end = Math.min(start + limit, snapshot.size());
+
+            ArrayList<SoundObject> sounds = new ArrayList<>(snapshot.subList(start, end));
+            ArrayList<String> names = new ArrayList<>(sounds.size());
+            long[] rowIds = new long[sounds.size()];
+
+            for (int i = 0; i < sounds.size(); i++) {
+
+                names.add(sounds.get(i).getItemName());
+                rowIds[i] = start + i;
+            }
+
+            return new PagedSoundList.Page(sounds, names, rowIds);
+        }
+
+        @Override
+        public PagedSoundList.Page loadAfter(String name, long rowId, int limit) {
+            return loadAt((int) rowId + 1, limit);
+        }
+
+        @Override
+        public PagedSoundList.Page loadBefore(String name, long rowId, int limit) {
+
+            int start = Math.max(0, (int) rowId - limit);
+
+            return loadAt(start, (int) rowId - start);
+        }
+
+        private synchronized List<SoundObject> getSnapshot() {
+
+            if (snapshot == null) {
+                snapshot = getFavorites();
+            }
+
+            return snapshot;
+        }
+    }
+}
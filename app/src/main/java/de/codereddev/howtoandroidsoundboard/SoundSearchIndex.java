@@ -0,0 +1,439 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Answers prefix queries over the sound names from memory so the list can be filtered on every keystroke.
+ * Every word of every name is kept in a sorted array next to the sound it belongs to.
+ * A query finds the range of words that begin with its longest word by binary search
+ * and only checks the other words against the sounds of that range.
+ * The index follows the catalog incrementally, only the sounds that changed are inserted or removed.
+ */
+public final class SoundSearchIndex {
+
+    // Define a tag that is used to log any kind of error or comment
+    private static final String LOG_TAG = SoundSearchIndex.class.getSimpleName();
+
+    // Define the share of changed sounds above which the index is built from scratch
+    private static final int REBUILD_DIVISOR = 4;
+
+    // Define the estimated sizes of the objects the index holds, in bytes
+    private static final int REFERENCE_SIZE = 4;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int MAP_ENTRY_OVERHEAD = 32;
+
+    private static final SoundSearchIndex INSTANCE = new SoundSearchIndex();
+
+    // Holds the normalized words in ascending order and the sound each word belongs to
+    private String[] words = new String[0];
+    private SoundObject[] owners = new SoundObject[0];
+    private int size = 0;
+
+    // Holds every indexed sound and its normalized name by sound key
+    private final HashMap<String, SoundObject> sounds = new HashMap<>();
+    private final HashMap<String, String> normalizedNames = new HashMap<>();
+
+    // Holds statistics that are shown on the latency debug screen
+    private long lastQueryNanos = 0;
+    private long lastUpdateMillis = 0;
+
+    // Orders the results like the MAIN table orders them by name
+    private final Comparator<SoundObject> nameComparator = new Comparator<SoundObject>() {
+        @Override
+        public int compare(SoundObject first, SoundObject second) {
+            return normalizedNames.get(first.getItemKey()).compareTo(normalizedNames.get(second.getItemKey()));
+        }
+    };
+
+    private SoundSearchIndex() {
+    }
+
+    /**
+     * Returns the index of the sound catalog.
+     *
+     * @return The index.
+     */
+    public static SoundSearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Brings the index in line with the catalog.
+     * Sounds are matched by their sound key and only the ones that were added, renamed or removed are changed.
+     * If most of the catalog changed the index is built from scratch.
+     *
+     * @param catalog All sounds of the catalog.
+     */
+    public synchronized void update(List<SoundObject> catalog) {
+
+        long start = SystemClock.elapsedRealtime();
+
+        HashMap<String, SoundObject> removedSounds = new HashMap<>(sounds);
+        ArrayList<SoundObject> addedSounds = new ArrayList<>();
+
+        for (SoundObject soundObject : catalog) {
+
+            SoundObject indexedSound = removedSounds.remove(soundObject.getItemKey());
+
+            if (indexedSound == null || !indexedSound.getItemName().equals(soundObject.getItemName())
+                    || !indexedSound.getItemId().equals(soundObject.getItemId())) {
+
+                if (indexedSound != null) {
+                    removedSounds.put(indexedSound.getItemKey(), indexedSound);
+                }
+
+                addedSounds.add(soundObject);
+            }
+        }
+
+        int changes = removedSounds.size() + addedSounds.size();
+
+        if (changes == 0) {
+            return;
+        }
+
+        if (changes > catalog.size() / REBUILD_DIVISOR) {
+
+            rebuild(catalog);
+
+        } else {
+
+            for (SoundObject soundObject : removedSounds.values()) {
+                remove(soundObject);
+            }
+
+            for (SoundObject soundObject : addedSounds) {
+                add(soundObject);
+            }
+        }
+
+        lastUpdateMillis = SystemClock.elapsedRealtime() - start;
+
+        Log.d(LOG_TAG, "Updated " + changes + " sounds in " + lastUpdateMillis + " ms: " + size
+                + " words of " + sounds.size() + " sounds, about " + getMemoryFootprint() / 1024 + " KB");
+    }
+
+    /**
+     * Returns all sounds that have a word which begins with every word of the query.
+     * Sounds whose whole name begins with the query come first, the rest is ordered by name.
+     *
+     * @param query Query as typed by the user.
+     * @return The matching sounds. All sounds if the query contains no words.
+     */
+    public synchronized ArrayList<SoundObject> query(String query) {
+
+        long start = System.nanoTime();
+
+        String normalizedQuery = SearchNormalizer.normalize(query);
+        String[] queryWords = splitWords(normalizedQuery);
+
+        ArrayList<SoundObject> results = new ArrayList<>();
+
+        if (queryWords.length == 0) {
+
+            results.addAll(sounds.values());
+            Collections.sort(results, nameComparator);
+
+            lastQueryNanos = System.nanoTime() - start;
+            return results;
+        }
+
+        // The longest word of the query selects the smallest range of the index
+        String rangeWord = queryWords[0];
+
+        for (String queryWord : queryWords) {
+
+            if (queryWord.length() > rangeWord.length()) {
+                rangeWord = queryWord;
+            }
+        }
+
+        ArrayList<SoundObject> otherResults = new ArrayList<>();
+        HashSet<String> seenKeys = new HashSet<>();
+
+        for (int i = lowerBound(rangeWord); i < size && words[i].startsWith(rangeWord); i++) {
+
+            SoundObject soundObject = owners[i];
+
+            // A sound appears once per matching word
+            if (!seenKeys.add(soundObject.getItemKey())) {
+                continue;
+            }
+
+            String normalizedName = normalizedNames.get(soundObject.getItemKey());
+
+            if (!containsWordPrefixes(normalizedName, queryWords)) {
+                continue;
+            }
+
+            if (normalizedName.startsWith(normalizedQuery)) {
+                results.add(soundObject);
+            } else {
+                otherResults.add(soundObject);
+            }
+        }
+
+        Collections.sort(results, nameComparator);
+        Collections.sort(otherResults, nameComparator);
+        results.addAll(otherResults);
+
+        lastQueryNanos = System.nanoTime() - start;
+
+        return results;
+    }
+
+    /**
+     * Checks if the index contains any sound.
+     *
+     * @return True if no sound has been indexed yet.
+     */
+    public synchronized boolean isEmpty() {
+        return sounds.isEmpty();
+    }
+
+    /**
+     * Estimates the memory the index occupies.
+     *
+     * @return The estimated size in bytes.
+     */
+    public synchronized long getMemoryFootprint() {
+
+        long bytes = 2L * words.length * REFERENCE_SIZE;
+
+        // Equal words share one String instance which is only counted once
+        for (int i = 0; i < size; i++) {
+
+            if (i == 0 || words[i] != words[i - 1]) {
+                bytes += STRING_OVERHEAD + 2L * words[i].length();
+            }
+        }
+
+        for (String normalizedName : normalizedNames.values()) {
+            bytes += 2 * MAP_ENTRY_OVERHEAD + STRING_OVERHEAD + 2L * normalizedName.length();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Describes the size of the index and the duration of the last query and update.
+     *
+     * @return A human readable summary.
+     */
+    public synchronized String dump() {
+
+        return String.format(Locale.ROOT,
+                             "Search index: %d words of %d sounds, about %d KB\n"
+                                 + "Last query: %d us, last update: %d ms\n",
+                             size, sounds.size(), getMemoryFootprint() / 1024,
+                             lastQueryNanos / 1000, lastUpdateMillis);
+    }
+
+    /**
+     * Replaces the content of the index with the catalog.
+     *
+     * @param catalog All sounds of the catalog.
+     */
+    private void rebuild(List<SoundObject> catalog) {
+
+        sounds.clear();
+        normalizedNames.clear();
+
+        ArrayList<String> newWords = new ArrayList<>();
+        final ArrayList<SoundObject> newOwners = new ArrayList<>();
+
+        for (SoundObject soundObject : catalog) {
+
+            String normalizedName = SearchNormalizer.normalize(soundObject.getItemName());
+
+            sounds.put(soundObject.getItemKey(), soundObject);
+            normalizedNames.put(soundObject.getItemKey(), normalizedName);
+
+            for (String word : distinctWords(normalizedName)) {
+                newWords.add(word);
+                newOwners.add(soundObject);
+            }
+        }
+
+        // Sort the positions by word and lay both arrays out in that order
+        final String[] unsortedWords = newWords.toArray(new String[newWords.size()]);
+        Integer[] order = new Integer[unsortedWords.length];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return unsortedWords[first].compareTo(unsortedWords[second]);
+            }
+        });
+
+        words = new String[order.length];
+        owners = new SoundObject[order.length];
+        size = order.length;
+
+        for (int i = 0; i < order.length; i++) {
+
+            String word = unsortedWords[order[i]];
+
+            // Let equal words share one String instance
+            words[i] = i > 0 && word.equals(words[i - 1]) ? words[i - 1] : word;
+            owners[i] = newOwners.get(order[i]);
+        }
+    }
+
+    /**
+     * Inserts every word of a sound at its sorted position.
+     *
+     * @param soundObject Sound to insert.
+     */
+    private void add(SoundObject soundObject) {
+
+        String normalizedName = SearchNormalizer.normalize(soundObject.getItemName());
+
+        sounds.put(soundObject.getItemKey(), soundObject);
+        normalizedNames.put(soundObject.getItemKey(), normalizedName);
+
+        for (String word : distinctWords(normalizedName)) {
+
+            if (size == words.length) {
+
+                int capacity = Math.max(16, size + (size >> 1));
+                words = Arrays.copyOf(words, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+            }
+
+            int position = lowerBound(word);
+
+            // Let equal words share one String instance
+            if (position < size && word.equals(words[position])) {
+                word = words[position];
+            }
+
+            System.arraycopy(words, position, words, position + 1, size - position);
+            System.arraycopy(owners, position, owners, position + 1, size - position);
+
+            words[position] = word;
+            owners[position] = soundObject;
+            size++;
+        }
+    }
+
+    /**
+     * Removes every word of a sound.
+     *
+     * @param soundObject Sound to remove as it has been indexed.
+     */
+    private void remove(SoundObject soundObject) {
+
+        String normalizedName = normalizedNames.remove(soundObject.getItemKey());
+        sounds.remove(soundObject.getItemKey());
+
+        if (normalizedName == null) {
+            return;
+        }
+
+        for (String word : distinctWords(normalizedName)) {
+
+            for (int i = lowerBound(word); i < size && words[i].equals(word); i++) {
+
+                if (owners[i].getItemKey().equals(soundObject.getItemKey())) {
+
+                    System.arraycopy(words, i + 1, words, i, size - i - 1);
+                    System.arraycopy(owners, i + 1, owners, i, size - i - 1);
+
+                    size--;
+                    words[size] = null;
+                    owners[size] = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first position whose word is not smaller than the given one.
+     *
+     * @param word Word to search for.
+     * @return The position, size if all words are smaller.
+     */
+    private int lowerBound(String word) {
+
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+
+            int middle = (low + high) >>> 1;
+
+            if (words[middle].compareTo(word) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Checks if every query word is the beginning of a word of the name.
+     *
+     * @param normalizedName Normalized name whose words are separated by single spaces.
+     * @param queryWords     Normalized query words.
+     * @return True if the name matches all query words.
+     */
+    private static boolean containsWordPrefixes(String normalizedName, String[] queryWords) {
+
+        for (String queryWord : queryWords) {
+
+            if (!normalizedName.startsWith(queryWord) && !normalizedName.contains(" " + queryWord)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Splits a normalized name into its words.
+     *
+     * @param normalizedName Normalized name.
+     * @return The words in their order, an empty array for an empty name.
+     */
+    private static String[] splitWords(String normalizedName) {
+        return normalizedName.isEmpty() ? new String[0] : normalizedName.split(" ");
+    }
+
+    /**
+     * Splits a normalized name into its words and drops the repeated ones.
+     *
+     * @param normalizedName Normalized name.
+     * @return The distinct words.
+     */
+    private static List<String> distinctWords(String normalizedName) {
+
+        List<String> distinctWords = new ArrayList<>();
+
+        for (String word : splitWords(normalizedName)) {
+
+            if (!distinctWords.contains(word)) {
+                distinctWords.add(word);
+            }
+        }
+
+        return distinctWords;
+    }
+}
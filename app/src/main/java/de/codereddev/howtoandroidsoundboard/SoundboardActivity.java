@@ -9,13 +9,9 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.Settings;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
-import android.support.v4.app.LoaderManager;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -27,9 +23,10 @@ import android.view.MenuItem;
 import android.view.View;
 
 import java.util.ArrayList;
+import java.util.List;
 
-public class SoundboardActivity
-    extends AppCompatActivity implements LoaderManager.LoaderCallbacks<ArrayList<SoundObject>> {
+public class SoundboardActivity extends AppCompatActivity
+    implements SoundListStore.Subscriber, SoundRepository.Observer {
 
     // Define a tag that is used to log any kind of error or comment
     private static final String LOG_TAG = SoundboardActivity.class.getSimpleName();
@@ -46,12 +43,21 @@ public class SoundboardActivity
     private SoundboardRecyclerAdapter mRecyclerAdapter;
     private RecyclerView.LayoutManager mLayoutManager;
 
+    // Declare a SoundPrefetcher that prepares the sounds which are about to be displayed
+    private SoundPrefetcher mSoundPrefetcher;
+
+    // Declare a SearchPipeline that runs the search queries in the background
+    private SearchPipeline mSearchPipeline;
+
     // Declare a View that will contain the layout of the activity and serves as the parent of a Snackbar
     private View mLayout;
 
     // Declare a DatabaseHandler to support database usage
     private DatabaseHandler mDatabaseHandler;
 
+    // Declare a SoundListStore that loads the catalog and keeps it across configuration changes
+    private SoundListStore mSoundListStore;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -60,14 +66,20 @@ public class SoundboardActivity
         // Assign an instance to the DatabaseHandler
         mDatabaseHandler = DatabaseHandler.getInstance(this);
 
-        // If the gets an update or runs for the first time fill the database with all SoundObjects
-        if (appUpdate()) {
+        // If the app gets an update or runs for the first time bring the database up to date
+        // Only the sounds that changed are written. Favorites are stored by their sound key,
+        // so they stay valid if resource ids change.
+        // The sync runs in the background and the catalog is displayed again once it has changed.
+        SoundRepository.getInstance(this).addObserver(this);
 
-            mDatabaseHandler.createSoundCollection();
+        if (appUpdate()) {
 
-            mDatabaseHandler.updateFavorites();
+            SoundRepository.getInstance(this).syncCatalog();
         }
 
+        // Keep the decoded data of the first favorites in memory
+        EventHandlerClass.pinFavorites(this);
+
         // Assign layout view
         // Take a look at activity_soundboard.xml change the id
         mLayout = findViewById(R.id.activity_soundboard);
@@ -90,14 +102,63 @@ public class SoundboardActivity
         // Initialize recycler adapter
         mRecyclerAdapter = new SoundboardRecyclerAdapter(this, mSoundList);
 
+        // Reuse the sound items of the other activity instead of inflating new ones
+        mRecyclerView.setRecycledViewPool(SoundboardRecyclerAdapter.getSharedViewPool());
+
         // Set the RecyclerView.Adapter
         mRecyclerView.setAdapter(mRecyclerAdapter);
 
+        // Prepare the visible sounds and the next rows in the background
+        mSoundPrefetcher = new SoundPrefetcher(this, mRecyclerView);
+
+        // Search in the background and only display the result of the latest query
+        mSearchPipeline = new SearchPipeline(new SearchPipeline.Source() {
+            @Override
+            public ArrayList<SoundObject> search(String query) {
+
+                // An empty query displays the whole catalog again, which is paged instead of searched
+                if (SearchNormalizer.normalize(query).isEmpty()) {
+                    return new ArrayList<>();
+                }
+
+                SoundSearchIndex searchIndex = SoundSearchIndex.getInstance();
+                DatabaseHandler databaseHandler = DatabaseHandler.getInstance(SoundboardActivity.this);
+
+                // Fall back to the database while the index is not built yet
+                ArrayList<SoundObject> results = searchIndex.isEmpty()
+                                                 ? databaseHandler.getSoundCollectionFromQuery(query)
+                                                 : searchIndex.query(query);
+
+                // Search for similar names if the user might have misspelled the sound
+                if (results.isEmpty()) {
+                    results = databaseHandler.getSoundCollectionFromFuzzyQuery(query);
+                }
+
+                return results;
+            }
+        }, new SearchPipeline.Listener() {
+            @Override
+            public void onResults(String query, ArrayList<SoundObject> results) {
+
+                if (SearchNormalizer.normalize(query).isEmpty()) {
+
+                    showCatalog();
+                    return;
+                }
+
+                mRecyclerAdapter.swapData(results);
+            }
+        });
+
         // Calls a method that handles all permission events
         requestPermissions();
 
-        // Calls a method that adds data from a database to the mSoundList
-        getSupportLoaderManager().initLoader(R.id.common_soundlist_loader_id, null, this);
+        // Display the catalog, a recreated activity receives the list that has been loaded before
+        mSoundListStore = SoundListStore.getInstance(this);
+        mSoundListStore.subscribe(SoundListStore.CATALOG, this);
+
+        // Initialise the audio path once the first frame is on screen
+        AudioWarmup.runAfterFirstFrame(this);
     }
 
     // Create an options menu
@@ -107,6 +168,9 @@ public class SoundboardActivity
         // Inflate the layout
         getMenuInflater().inflate(R.menu.toolbar_menu, menu);
 
+        // Only show the latency debug screen in debug builds
+        menu.findItem(R.id.action_latency_show).setVisible(BuildConfig.DEBUG);
+
         // Define a SearchView to provide a search function and define its behaviour
         MenuItem menuItem = menu.findItem(R.id.action_search);
         SearchView searchView = (SearchView) menuItem.getActionView();
@@ -114,33 +178,37 @@ public class SoundboardActivity
             @Override
             public boolean onQueryTextSubmit(String query) {
 
-                /*
-                 * Searches for sound objects that begin with the
-                 * entered string and displays them on submit of the search.
-                 */
-                mRecyclerAdapter.queryData(query);
+                mSearchPipeline.submitNow(query);
                 return true;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                return false;
+
+                // Filter while typing, the pipeline waits for a short pause between keystrokes
+                mSearchPipeline.submit(newText);
+                return true;
             }
         });
 
         menuItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
             @Override
             public boolean onMenuItemActionExpand(MenuItem item) {
+
+                // The catalog is paged, so the index is only built once the user wants to search
+                // Only the sounds that changed since the last search are reindexed
+                updateSearchIndex(false);
+
                 return true;
             }
 
             @Override
             public boolean onMenuItemActionCollapse(MenuItem item) {
 
-                getSupportLoaderManager()
-                    .restartLoader(R.id.common_soundlist_loader_id,
-                                   null,
-                                   SoundboardActivity.this);
+                // Keep a late search result from replacing the full list
+                mSearchPipeline.cancel();
+
+                showCatalog();
                 return true;
             }
         });
@@ -160,17 +228,54 @@ public class SoundboardActivity
             case R.id.action_favorite:
                 startActivity(new Intent(this, FavoriteActivity.class));
                 break;
+            case R.id.action_latency_show:
+                startActivity(new Intent(this, LatencyDebugActivity.class));
+                break;
             default:
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        // Preload the visible sounds again in case the engine has been released in the meantime
+        mSoundPrefetcher.refresh();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // Save how long the first tap of this start took to compare it with and without warmup
+        AudioWarmup.saveFirstTapLatency(this);
+    }
+
     // Takes care of some things when the user closes the activity
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
+        // The pooled items must not outlive the activity they were inflated in
+        SoundboardRecyclerAdapter.clearSharedViewPool(this);
+
+        SoundRepository.getInstance(this).removeObserver(this);
+
+        mSoundListStore.unsubscribe(SoundListStore.CATALOG, this);
+
+        // Keep the catalog for the next instance unless the activity is closed for good
+        if (isFinishing()) {
+
+            mSoundListStore.clear(SoundListStore.CATALOG);
+            mSoundListStore.log();
+        }
+
+        // Drop the result of a search that is still running
+        mSearchPipeline.cancel();
+        mSearchPipeline.log();
+
         // Calls a method that releases all data from the used MediaPlayer instance
         EventHandlerClass.releaseMediaPlayer();
     }
@@ -267,7 +372,6 @@ public class SoundboardActivity
         //Check for updates
         if (savedVersionCode == doesntExist) {
 
-            mDatabaseHandler.appUpdate();
             // First run of the app
             // Set the saved version code to the current version code
             edit.putInt(prefVersionCodeKey, currentVersionCode);
@@ -276,7 +380,6 @@ public class SoundboardActivity
         } else if (currentVersionCode > savedVersionCode) {
 
             // App update
-            mDatabaseHandler.appUpdate();
             edit.putInt(prefVersionCodeKey, currentVersionCode);
             edit.apply();
             return true;
@@ -285,26 +388,72 @@ public class SoundboardActivity
         return false;
     }
 
-    @NonNull
+    /**
+     * Displays the whole catalog again. It is only read again if search results have been displayed in its place.
+     */
+    private void showCatalog() {
+
+        mSoundListStore.refresh(SoundListStore.CATALOG);
+    }
+
     @Override
-    public Loader<ArrayList<SoundObject>> onCreateLoader(int id, @Nullable Bundle args) {
-        return new SoundListLoader(getApplicationContext()) {
+    public void onSoundListChanged(PagedSoundList list) {
 
-            @Override
-            public ArrayList<SoundObject> loadInBackground() {
-                return DatabaseHandler.getInstance(SoundboardActivity.this).getSoundCollection();
-            }
-        };
+        mRecyclerAdapter.swapPagedData(list);
+
+        // Decode the sounds that are about to be displayed ahead of time
+        mSoundPrefetcher.refresh();
     }
 
     @Override
-    public void onLoadFinished(@NonNull Loader<ArrayList<SoundObject>> loader, ArrayList<SoundObject> data) {
+    public void onFavoriteAdded(SoundObject soundObject, int position) {
+        mRecyclerAdapter.notifyFavoritesChanged();
+    }
 
-        mRecyclerAdapter.swapData(data);
+    @Override
+    public void onFavoriteRemoved(SoundObject soundObject, int position) {
+        mRecyclerAdapter.notifyFavoritesChanged();
     }
 
     @Override
-    public void onLoaderReset(@NonNull Loader<ArrayList<SoundObject>> loader) {
-        mRecyclerAdapter.swapData(new ArrayList<SoundObject>());
+    public void onCatalogChanged() {
+
+        // The SoundListStore loads the changed catalog and delivers it to onSoundListChanged()
+        // The search index is only kept in line once the user has searched
+        updateSearchIndex(true);
     }
+
+    /**
+     * Brings the search index in line with the catalog snapshot of the SoundRepository on the search thread.
+     *
+     * @param onlyIfBuilt True to skip the update while the index has not been built yet.
+     */
+    private void updateSearchIndex(final boolean onlyIfBuilt) {
+
+        final SoundRepository soundRepository = SoundRepository.getInstance(this);
+
+        mSearchPipeline.prepare(new Runnable() {
+            @Override
+            public void run() {
+
+                SoundSearchIndex searchIndex = SoundSearchIndex.getInstance();
+                List<SoundObject> catalog = soundRepository.getCatalog();
+
+                // The snapshot is still being loaded, searches fall back to the database until the next update
+                if (catalog == null || (onlyIfBuilt && searchIndex.isEmpty())) {
+                    return;
+                }
+
+                searchIndex.update(catalog);
+            }
+        });
+    }
+
+    @Override
+    public void onFavoritesLoaded() {
+
+        // The stars that have been bound before were all empty
+        mRecyclerAdapter.notifyFavoritesChanged();
+    }
+
 }
@@ -1,35 +1,143 @@
 package de.codereddev.howtoandroidsoundboard;
 
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SoundboardRecyclerAdapter
     extends RecyclerView.Adapter<SoundboardRecyclerAdapter.SoundboardViewHolder> {
 
+    // Calculates the differences between the displayed and a new list for all adapters
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    // Define the number of sound items the shared pool keeps for reuse
+    private static final int SHARED_POOL_SIZE = 24;
+
+    // Holds the sound items that are reused by all activities that display sounds
+    private static RecyclerView.RecycledViewPool sharedViewPool = null;
+
+    // Define the first id of the placeholders that are displayed while a page is loaded
+    private static final long PLACEHOLDER_ID_BASE = Long.MIN_VALUE;
+
+    // Marks an update that only changes the favorite state of the items
+    private static final Object PAYLOAD_FAVORITE = new Object();
+
     // Declare an ArrayList that will contain all SoundObjects
     private ArrayList<SoundObject> soundObjects;
 
-    // DatabaseHandler to handle database requests
-    private DatabaseHandler databaseHandler;
+    // Declare a PagedSoundList that is displayed instead of the ArrayList if it is set
+    private PagedSoundList pagedSounds = null;
+
+    // Knows which sounds are favorites without any I/O
+    private final SoundRepository soundRepository;
+
+    // Delivers calculated differences to the main thread
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Is increased by every new list to discard the differences to older ones
+    private int generation = 0;
+
+    // Counts the calls of onBindViewHolder() to measure the effect of fine-grained updates
+    private long bindCount = 0;
 
     /**
      * Creates a new RecyclerAdapter that demands all needed informations for the RecyclerView.
      *
+     * @param context      Context to access the favorites.
      * @param soundObjects Main content provider.
      */
     public SoundboardRecyclerAdapter(Context context, ArrayList<SoundObject> soundObjects) {
 
         // Hand over all data to the private ArrayList
         this.soundObjects = soundObjects;
-        databaseHandler = DatabaseHandler.getInstance(context.getApplicationContext());
+
+        this.soundRepository = SoundRepository.getInstance(context);
+
+        // Identify items by their sound, so the RecyclerView can keep their views on changes
+        setHasStableIds(true);
+    }
+
+    /**
+     * Returns the pool of sound items that is shared by all RecyclerViews that display sounds,
+     * so switching between the soundboard and the favorites does not inflate the items again.
+     * Both activities use the same theme, so their items are interchangeable.
+     * Must only be used on the main thread.
+     *
+     * @return The shared pool.
+     */
+    public static RecyclerView.RecycledViewPool getSharedViewPool() {
+
+        if (sharedViewPool == null) {
+
+            sharedViewPool = new RecyclerView.RecycledViewPool();
+            sharedViewPool.setMaxRecycledViews(0, SHARED_POOL_SIZE);
+        }
+
+        return sharedViewPool;
+    }
+
+    /**
+     * Drops the items of the shared pool that have been inflated in an activity. Should be called when
+     * the activity is destroyed, so the pool does not keep it alive. The items of the other activities stay
+     * in the pool, because those activities might still display sounds.
+     *
+     * @param context Activity whose items are dropped.
+     */
+    public static void clearSharedViewPool(Context context) {
+
+        if (sharedViewPool == null) {
+            return;
+        }
+
+        ArrayList<RecyclerView.ViewHolder> keptHolders = new ArrayList<>();
+        RecyclerView.ViewHolder holder;
+
+        while ((holder = sharedViewPool.getRecycledView(0)) != null) {
+
+            if (!isInflatedIn(holder.itemView, context)) {
+                keptHolders.add(holder);
+            }
+        }
+
+        for (RecyclerView.ViewHolder keptHolder : keptHolders) {
+            sharedViewPool.putRecycledView(keptHolder);
+        }
+    }
+
+    /**
+     * Checks if a view has been inflated in a context, even if the context has been wrapped, e.g. for a theme.
+     */
+    private static boolean isInflatedIn(View view, Context context) {
+
+        Context viewContext = view.getContext();
+
+        while (viewContext != null) {
+
+            if (viewContext == context) {
+                return true;
+            }
+
+            viewContext = viewContext instanceof ContextWrapper
+                          ? ((ContextWrapper) viewContext).getBaseContext()
+                          : null;
+        }
+
+        return false;
     }
 
     // Initialises each RecyclerView item
@@ -47,102 +155,411 @@ public class SoundboardRecyclerAdapter
     @Override
     public void onBindViewHolder(@NonNull SoundboardViewHolder holder, int position) {
 
-        // Get a SoundObject from the ArrayList that also contains
-        // Simplifies the set processes
-        final SoundObject soundObject = soundObjects.get(position);
+        bindCount++;
+
+        SoundObject soundObject = getSoundObject(position);
+
+        // The listeners of the holder play the sound it has been bound to, so nothing is allocated here
+        // and a holder that has been reused from the shared pool never looks into the adapter of another activity
+        holder.soundObject = soundObject;
 
         // Set the name of each sound button that is represented by the soundObject
-        holder.itemTextView.setText(soundObject.getItemName());
+        // A sound whose page is still loading is displayed without a name until the page arrives
+        holder.itemTextView.setText(soundObject != null ? soundObject.getItemName() : "");
 
-        // Handle actions when the user simply clicks on a sound button
-        holder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
+        bindFavoriteState(holder, soundObject);
+    }
 
-                final Context context = v.getContext();
-                // Calls a method that plays the sound
-                // Should be handled in an extra thread
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
+    @Override
+    public void onBindViewHolder(@NonNull SoundboardViewHolder holder, int position, @NonNull List<Object> payloads) {
 
-                        EventHandlerClass.startMediaPlayer(context, soundObject.getItemId());
-                    }
-                }).start();
-            }
-        });
+        // Only the star has to be updated if nothing but the favorite state has changed
+        if (!payloads.isEmpty() && allFavoritePayloads(payloads)) {
 
-        // Handle actions when the user presses a sound button
-        holder.itemView.setOnLongClickListener(new View.OnLongClickListener() {
-            @Override
-            public boolean onLongClick(View v) {
+            holder.soundObject = getSoundObject(position);
+            bindFavoriteState(holder, holder.soundObject);
+            return;
+        }
 
-                // Calls a method that creates a PopupMenu where the user can choose between several actions
-                EventHandlerClass.popupManager(v, soundObject);
-                return true;
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    /**
+     * Shows the full star if the sound is a favorite. Is a lookup in the favorites id set, so it never blocks.
+     *
+     * @param holder      Holder to update.
+     * @param soundObject Sound the holder displays or null for a placeholder.
+     */
+    private void bindFavoriteState(SoundboardViewHolder holder, @Nullable SoundObject soundObject) {
+
+        holder.itemStarView.setVisibility(soundObject != null ? View.VISIBLE : View.INVISIBLE);
+        holder.itemStarView.setActivated(soundObject != null && soundRepository.isFavorite(soundObject.getItemId()));
+    }
+
+    private static boolean allFavoritePayloads(List<Object> payloads) {
+
+        for (int i = 0; i < payloads.size(); i++) {
+
+            if (payloads.get(i) != PAYLOAD_FAVORITE) {
+                return false;
             }
-        });
+        }
+
+        return true;
+    }
+
+    /**
+     * Updates the stars of the displayed items after favorites have changed.
+     * Only the items that are bound are touched and only their star is updated.
+     */
+    public void notifyFavoritesChanged() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_FAVORITE);
+    }
+
+    /**
+     * Returns a 64 bit FNV-1a hash of the sound key as stable id, so the id does not change between builds.
+     * Sounds without a key fall back to their resource id and placeholders to their position.
+     *
+     * @param position Position in the list.
+     * @return The stable id of the sound.
+     */
+    @Override
+    public long getItemId(int position) {
+
+        SoundObject soundObject = getSoundObject(position);
+
+        if (soundObject == null) {
+            return PLACEHOLDER_ID_BASE + position;
+        }
+
+        String key = soundObject.getItemKey();
+
+        if (key == null) {
+            return soundObject.getItemId();
+        }
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < key.length(); i++) {
+
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
     }
 
     // Tells the RecyclerView how many items are accessible to be displayed
     // Should return the size of the given content provider (here: SoundObject ArrayList)
     @Override
     public int getItemCount() {
-        return soundObjects.size();
+        return pagedSounds != null ? pagedSounds.size() : soundObjects.size();
     }
 
     /**
      * An object that holds all accessible areas that are declared in XML by you.
+     * Handles the clicks on its item itself, so the listeners are only created once per view.
+     * Is static because its items are shared between the adapters of all activities.
      */
-    class SoundboardViewHolder extends RecyclerView.ViewHolder {
+    static class SoundboardViewHolder extends RecyclerView.ViewHolder
+        implements View.OnClickListener, View.OnLongClickListener {
+
+        // Sound the holder has been bound to or null while its page is loading
+        @Nullable
+        private SoundObject soundObject = null;
 
         // TextView to display the name of a sound button
         private TextView itemTextView;
 
+        // ImageView that shows if the sound is a favorite
+        private ImageView itemStarView;
+
         SoundboardViewHolder(View itemView) {
             super(itemView);
 
             // Assign itemTextView to the TextView item declared in sound_item.xml
             itemTextView = itemView.findViewById(R.id.textViewItem);
+
+            // Assign itemStarView to the ImageView item declared in sound_item.xml
+            itemStarView = itemView.findViewById(R.id.imageViewStar);
+
+            itemView.setOnClickListener(this);
+            itemView.setOnLongClickListener(this);
+        }
+
+        // Handle actions when the user simply clicks on a sound button
+        @Override
+        public void onClick(View v) {
+
+            // The page of the item is still loading
+            if (soundObject == null) {
+                return;
+            }
+
+            int soundId = soundObject.getItemId();
+
+            // Start measuring the time until the sound can be heard
+            LatencyTracer.getInstance().begin(soundId);
+
+            // Calls a method that queues the sound on the playback thread
+            EventHandlerClass.playSound(v.getContext(), soundId);
+        }
+
+        // Handle actions when the user presses a sound button
+        @Override
+        public boolean onLongClick(View v) {
+
+            if (soundObject == null) {
+                return false;
+            }
+
+            // Calls a method that creates a PopupMenu where the user can choose between several actions
+            EventHandlerClass.popupManager(v, soundObject);
+            return true;
         }
     }
 
+    /**
+     * Returns the SoundObject that is displayed at a position.
+     * If a PagedSoundList is displayed the pages around the position are loaded.
+     *
+     * @param position Position in the list.
+     * @return The SoundObject at the position or null if its page has not been loaded yet.
+     */
+    @Nullable
+    public SoundObject getSoundObject(int position) {
+
+        if (pagedSounds != null) {
+            return pagedSounds.get(position);
+        }
+
+        return soundObjects.get(position);
+    }
+
+    /**
+     * Displays a PagedSoundList instead of a SoundObject list, e.g. the whole catalog.
+     * Its items are rebound as soon as their pages are loaded.
+     * Cancels the calculation of differences to a previous list. Must be called on the main thread.
+     *
+     * @param data PagedSoundList whose first page has been loaded.
+     */
+    public void swapPagedData(PagedSoundList data) {
+
+        // The loader delivers the same list again, e.g. after a configuration change
+        if (data == pagedSounds) {
+            return;
+        }
+
+        replacePagedSounds(data);
+
+        // The lists can not be compared, the stable ids keep the views of the sounds that stay
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Displays a PagedSoundList that contains one sound more than the displayed one.
+     * Only the inserted item is animated and bound.
+     *
+     * @param data     PagedSoundList whose pages around the position have been loaded.
+     * @param position Position of the inserted sound.
+     */
+    public void insertPagedSound(PagedSoundList data, int position) {
+
+        replacePagedSounds(data);
+        notifyItemInserted(position);
+    }
+
+    /**
+     * Displays a PagedSoundList that contains one sound less than the displayed one.
+     * Only the removed item is animated.
+     *
+     * @param data     PagedSoundList whose pages around the position have been loaded.
+     * @param position Position the removed sound had.
+     */
+    public void removePagedSound(PagedSoundList data, int position) {
+
+        replacePagedSounds(data);
+        notifyItemRemoved(position);
+    }
+
+    private void replacePagedSounds(PagedSoundList data) {
+
+        // Drop the differences that are calculated for a previous list
+        generation++;
+
+        releasePagedSounds();
+
+        pagedSounds = data;
+        soundObjects = new ArrayList<>();
+
+        pagedSounds.setListener(new PagedSoundList.Listener() {
+            @Override
+            public void onRangeLoaded(int positionStart, int itemCount) {
+                notifyItemRangeChanged(positionStart, itemCount);
+            }
+        });
+    }
+
+    /**
+     * @return The displayed PagedSoundList or null if a SoundObject list is displayed.
+     */
+    @Nullable
+    public PagedSoundList getPagedSounds() {
+        return pagedSounds;
+    }
+
     /**
      * Exchanges the SoundObject list that should be displayed.
      *
      * @param data New SoundObject list.
      */
     public void swapData(ArrayList<SoundObject> data) {
-
-        this.soundObjects = data;
-        notifyDataSetChanged();
+        swapData(data, null);
     }
 
     /**
-     * Queries the soundlist for sound objects that begin with the given string.
-     * The query process is running on an extra thread.
+     * Exchanges the SoundObject list that should be displayed.
+     * The differences to the displayed list are calculated in the background and dispatched
+     * as fine-grained notifications, so only changed items are rebound and animated.
+     * If a newer list arrives before the differences are known they are discarded.
+     * Must be called on the main thread.
      *
-     * @param soundName Name to query for.
+     * @param data        New SoundObject list. Must not be modified afterwards.
+     * @param onCommitted Gets called on the main thread once the list is displayed. May be null.
      */
-    public void queryData(final String soundName) {
+    public void swapData(final ArrayList<SoundObject> data, @Nullable final Runnable onCommitted) {
 
-        final Handler handler = new Handler();
+        final int swapGeneration = ++generation;
+        final ArrayList<SoundObject> oldData = soundObjects;
 
-        new Thread(new Runnable() {
+        // The pages of a PagedSoundList can not be compared without loading all of them
+        if (pagedSounds != null) {
+
+            releasePagedSounds();
+
+            soundObjects = data;
+            notifyDataSetChanged();
+
+            runIfNotNull(onCommitted);
+            return;
+        }
+
+        if (data == oldData) {
+
+            runIfNotNull(onCommitted);
+            return;
+        }
+
+        // There is nothing to compare if one of the lists is empty
+        if (oldData.isEmpty() || data.isEmpty()) {
+
+            soundObjects = data;
+
+            if (!oldData.isEmpty()) {
+                notifyItemRangeRemoved(0, oldData.size());
+            } else {
+                notifyItemRangeInserted(0, data.size());
+            }
+
+            runIfNotNull(onCommitted);
+            return;
+        }
+
+        DIFF_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
 
-                final ArrayList<SoundObject> queryList =
-                    databaseHandler.getSoundCollectionFromQuery(soundName);
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new SoundDiffCallback(oldData, data));
 
-                handler.post(new Runnable() {
+                mainHandler.post(new Runnable() {
                     @Override
                     public void run() {
 
-                        swapData(queryList);
+                        // A newer list has been swapped in while the differences were calculated
+                        if (swapGeneration != generation) {
+                            return;
+                        }
+
+                        soundObjects = data;
+                        diffResult.dispatchUpdatesTo(SoundboardRecyclerAdapter.this);
+
+                        runIfNotNull(onCommitted);
                     }
                 });
             }
-        }).start();
+        });
+    }
+
+    /**
+     * @return The number of calls of onBindViewHolder() so far.
+     */
+    public long getBindCount() {
+        return bindCount;
+    }
+
+    private void releasePagedSounds() {
+
+        if (pagedSounds != null) {
+
+            pagedSounds.log();
+            pagedSounds.release();
+            pagedSounds = null;
+        }
+    }
+
+    private static void runIfNotNull(@Nullable Runnable runnable) {
+
+        if (runnable != null) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Compares two lists of SoundObjects. Sounds are the same item if they have the same sound key.
+     */
+    private static class SoundDiffCallback extends DiffUtil.Callback {
+
+        private final List<SoundObject> oldList;
+        private final List<SoundObject> newList;
+
+        SoundDiffCallback(List<SoundObject> oldList, List<SoundObject> newList) {
+
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+
+            SoundObject oldItem = oldList.get(oldItemPosition);
+            SoundObject newItem = newList.get(newItemPosition);
+
+            // Sounds without a key can only be told apart by their resource id
+            if (oldItem.getItemKey() == null || newItem.getItemKey() == null) {
+                return oldItem.getItemId().equals(newItem.getItemId());
+            }
+
+            return oldItem.getItemKey().equals(newItem.getItemKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+
+            SoundObject oldItem = oldList.get(oldItemPosition);
+            SoundObject newItem = newList.get(newItemPosition);
+
+            return oldItem.getItemName().equals(newItem.getItemName())
+                && oldItem.getItemId().equals(newItem.getItemId());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Splits names into trigrams and measures how similar two names are.
+ * Is used by the fuzzy search that still finds sounds if the user misspells their name.
+ */
+public final class Trigrams {
+
+    private Trigrams() {
+    }
+
+    /**
+     * Returns the distinct trigrams of a normalized name.
+     * Every word is padded with a space on both sides, so the beginning and the end of
+     * a word form trigrams of their own and words shorter than three characters still have one.
+     *
+     * @param normalizedName Name whose words are separated by single spaces.
+     * @return The trigrams in the order of their first occurrence.
+     */
+    public static Set<String> of(String normalizedName) {
+
+        Set<String> trigrams = new LinkedHashSet<>();
+
+        if (normalizedName.isEmpty()) {
+            return trigrams;
+        }
+
+        for (String word : normalizedName.split(" ")) {
+
+            String paddedWord = " " + word + " ";
+
+            for (int i = 0; i + 3 <= paddedWord.length(); i++) {
+                trigrams.add(paddedWord.substring(i, i + 3));
+            }
+        }
+
+        return trigrams;
+    }
+
+    /**
+     * Calculates the share of the query trigrams that are part of a name.
+     * Unlike a symmetric similarity a long name is not punished for the words the user left out.
+     *
+     * @param sharedCount Number of trigrams the query and the name have in common.
+     * @param queryCount  Number of trigrams of the query.
+     * @return 1 if the name contains all trigrams of the query, 0 if it contains none.
+     */
+    public static float coverage(int sharedCount, int queryCount) {
+
+        if (queryCount == 0) {
+            return 0;
+        }
+
+        return (float) sharedCount / queryCount;
+    }
+
+    /**
+     * Sums up how many edits every word of the query needs to become the beginning of a word of the name.
+     * Each query word is compared with the best matching name word, cut to the length of the query word,
+     * so half typed words are not punished.
+     *
+     * @param normalizedQuery Query whose words are separated by single spaces.
+     * @param normalizedName  Name whose words are separated by single spaces.
+     * @return The number of edits.
+     */
+    public static int wordDistance(String normalizedQuery, String normalizedName) {
+
+        if (normalizedQuery.isEmpty()) {
+            return 0;
+        }
+
+        String[] nameWords = normalizedName.split(" ");
+        int distance = 0;
+
+        for (String queryWord : normalizedQuery.split(" ")) {
+
+            int bestDistance = queryWord.length();
+
+            for (String nameWord : nameWords) {
+
+                String namePrefix = nameWord.length() > queryWord.length()
+                                    ? nameWord.substring(0, queryWord.length()) : nameWord;
+
+                bestDistance = Math.min(bestDistance, editDistance(queryWord, namePrefix));
+            }
+
+            distance += bestDistance;
+        }
+
+        return distance;
+    }
+
+    /**
+     * Calculates the Levenshtein distance between two strings.
+     *
+     * @param first  First string.
+     * @param second Second string.
+     * @return The minimum number of insertions, deletions and substitutions.
+     */
+    public static int editDistance(String first, String second) {
+
+        int[] previousRow = new int[second.length() + 1];
+        int[] currentRow = new int[second.length() + 1];
+
+        for (int j = 0; j <= second.length(); j++) {
+            previousRow[j] = j;
+        }
+
+        for (int i = 1; i <= first.length(); i++) {
+
+            currentRow[0] = i;
+
+            for (int j = 1; j <= second.length(); j++) {
+
+                int cost = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+
+                currentRow[j] = Math.min(Math.min(currentRow[j - 1] + 1, previousRow[j] + 1),
+                                         previousRow[j - 1] + cost);
+            }
+
+            int[] row = previousRow;
+            previousRow = currentRow;
+            currentRow = row;
+        }
+
+        return previousRow[second.length()];
+    }
+}
@@ -0,0 +1,175 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+
+/**
+ * Keeps track of a fixed number of voices that may sound at the same time.
+ * All voices are allocated once and reused, so sustained tapping does not allocate anything.
+ * If every voice is in use the oldest voice is stolen for the new sound.
+ */
+public class VoiceAllocator {
+
+    /**
+     * Gets called when a voice that is still sounding is taken over by a new sound.
+     */
+    public interface OnVoiceStolenListener {
+
+        /**
+         * Stops the sound that is currently played by the voice.
+         *
+         * @param voice Voice that has been stolen.
+         */
+        void onVoiceStolen(Voice voice);
+    }
+
+    /**
+     * Holds the state of one voice.
+     * A voice either plays a SoundPool stream or uses its own MediaPlayer which is reused.
+     */
+    public static class Voice {
+
+        // Id of the SoundPool stream or 0 if the voice uses its MediaPlayer
+        int streamId;
+        int soundId;
+        float volume;
+        long startTime;
+
+        // Time at which the sound has ended, estimated if the duration is not known
+        long endTime;
+        boolean active;
+
+        // Is created on first use of the voice and reused afterwards
+        MediaPlayer player;
+    }
+
+    private final Voice[] voices;
+    private final OnVoiceStolenListener listener;
+
+    // Duration that is assumed for a sound whose duration is not known
+    private final long unknownDurationMs;
+
+    private long stolenCount = 0;
+
+    /**
+     * Creates a VoiceAllocator.
+     *
+     * @param maxVoices         Maximum number of voices that may sound at the same time.
+     * @param unknownDurationMs Duration that is assumed for a sound whose duration is not known.
+     *                          Should be the longest duration a sound may have, so it is not cut off early.
+     * @param listener          Listener that stops stolen voices.
+     */
+    public VoiceAllocator(int maxVoices, long unknownDurationMs, OnVoiceStolenListener listener) {
+
+        this.voices = new Voice[Math.max(1, maxVoices)];
+        this.unknownDurationMs = unknownDurationMs;
+        this.listener = listener;
+
+        for (int i = 0; i < voices.length; i++) {
+            voices[i] = new Voice();
+        }
+    }
+
+    /**
+     * Returns a voice for a new sound. Steals a voice if all voices are in use.
+     *
+     * @param soundId    Resource id of the sound.
+     * @param volume     Volume the sound will be played with.
+     * @param durationMs Duration of the sound or a negative value if it is unknown.
+     * @return The voice that should play the sound.
+     */
+    public Voice acquire(int soundId, float volume, long durationMs) {
+
+        long now = SystemClock.uptimeMillis();
+        Voice candidate = null;
+
+        for (Voice voice : voices) {
+
+            // Free every voice whose sound has already ended
+            if (voice.active && voice.endTime <= now) {
+                voice.active = false;
+            }
+
+            if (!voice.active) {
+                candidate = voice;
+                break;
+            }
+
+            // Steal the voice that has been sounding the longest
+            if (candidate == null || voice.startTime < candidate.startTime) {
+                candidate = voice;
+            }
+        }
+
+        if (candidate.active) {
+
+            stolenCount++;
+            listener.onVoiceStolen(candidate);
+        }
+
+        candidate.streamId = 0;
+        candidate.soundId = soundId;
+        candidate.volume = volume;
+        candidate.startTime = now;
+        candidate.endTime = now + (durationMs >= 0 ? durationMs : unknownDurationMs);
+        candidate.active = true;
+
+        return candidate;
+    }
+
+    /**
+     * Marks a voice as free, e.g. when its MediaPlayer has completed.
+     *
+     * @param voice Voice to free.
+     */
+    public void free(Voice voice) {
+        voice.active = false;
+    }
+
+    /**
+     * @return All voices managed by the allocator.
+     */
+    public Voice[] getVoices() {
+        return voices;
+    }
+
+    /**
+     * @return The number of voices that are currently sounding.
+     */
+    public int getActiveVoiceCount() {
+
+        long now = SystemClock.uptimeMillis();
+        int count = 0;
+
+        for (Voice voice : voices) {
+            if (voice.active && voice.endTime > now) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return The number of voices that have been stolen since the allocator was created.
+     */
+    public long getStolenVoiceCount() {
+        return stolenCount;
+    }
+
+    /**
+     * @return The number of MediaPlayers that have been created by the voices.
+     */
+    public int getAllocatedPlayerCount() {
+
+        int count = 0;
+
+        for (Voice voice : voices) {
+            if (voice.player != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,199 @@
+package de.codereddev.howtoandroidsoundboard;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the probing, the backward-shift deletion and the resizing of the IntHashSet.
+ */
+public class IntHashSetTest {
+
+    // Define the capacity of a new set, values are placed by hash(value) & (CAPACITY - 1)
+    private static final int CAPACITY = 16;
+
+    @Test
+    public void addRemoveContains_singleValues() {
+
+        IntHashSet set = new IntHashSet();
+
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.contains(42));
+        assertFalse(set.contains(43));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(42));
+        assertFalse(set.remove(42));
+        assertFalse(set.contains(42));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    public void addRemoveContains_zeroIsStoredLikeAnyOtherValue() {
+
+        IntHashSet set = new IntHashSet();
+
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+
+        set.add(7);
+
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.contains(7));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void remove_keepsCollidingValuesReachableAcrossWraparound() {
+
+        // All values want the last slot, so they occupy 15, 0, 1 and 2
+        int[] values = findValuesWithHomeSlot(CAPACITY - 1, 4);
+
+        // Wants slot 0 but ends up behind the cluster, the deletions have to move it back towards its home
+        int ownValue = findValuesWithHomeSlot(0, 1)[0];
+
+        IntHashSet set = new IntHashSet();
+
+        for (int value : values) {
+            assertTrue(set.add(value));
+        }
+
+        set.add(ownValue);
+
+        // Removing the first value of the cluster shifts the others back over the end of the table
+        assertTrue(set.remove(values[0]));
+        assertFalse(set.contains(values[0]));
+
+        for (int i = 1; i < values.length; i++) {
+            assertTrue(set.contains(values[i]));
+        }
+
+        assertTrue(set.contains(ownValue));
+
+        // Removing from the middle of the cluster
+        assertTrue(set.remove(values[2]));
+
+        assertTrue(set.contains(values[1]));
+        assertTrue(set.contains(values[3]));
+        assertTrue(set.contains(ownValue));
+        assertFalse(set.contains(values[2]));
+        assertEquals(3, set.size());
+
+        // The freed slots can be used again
+        assertTrue(set.add(values[0]));
+        assertTrue(set.add(values[2]));
+
+        for (int value : values) {
+            assertTrue(set.contains(value));
+        }
+
+        assertEquals(5, set.size());
+    }
+
+    @Test
+    public void add_growsAndKeepsAllValues() {
+
+        IntHashSet set = new IntHashSet();
+        int footprint = set.getMemoryFootprint();
+
+        // Resource ids only differ in their lowest bits
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.add(0x7f060000 + i));
+        }
+
+        assertEquals(1000, set.size());
+        assertTrue(set.getMemoryFootprint() > footprint);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.contains(0x7f060000 + i));
+        }
+
+        assertFalse(set.contains(0x7f060000 + 1000));
+
+        // Deleting after the resize still finds every remaining value
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(set.remove(0x7f060000 + i));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 1, set.contains(0x7f060000 + i));
+        }
+
+        assertEquals(500, set.size());
+    }
+
+    @Test
+    public void clear_removesAllValues() {
+
+        IntHashSet set = new IntHashSet();
+
+        for (int i = 0; i < 100; i++) {
+            set.add(i);
+        }
+
+        set.clear();
+
+        assertEquals(0, set.size());
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(set.contains(i));
+        }
+    }
+
+    @Test
+    public void randomOperations_matchHashSet() {
+
+        // A small range of values makes collisions, repeated adds and removes of present values common
+        Random random = new Random(4711);
+
+        IntHashSet set = new IntHashSet();
+        HashSet<Integer> expected = new HashSet<>();
+
+        for (int i = 0; i < 100000; i++) {
+
+            int value = random.nextInt(512) - 64;
+
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+
+            assertEquals(expected.size(), set.size());
+        }
+
+        for (int value = -64; value < 448; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+
+    /**
+     * Searches values whose home slot in a new set is the given one.
+     *
+     * @param slot  Home slot the values have to share.
+     * @param count Number of values to find.
+     * @return The values, none of them is 0.
+     */
+    private static int[] findValuesWithHomeSlot(int slot, int count) {
+
+        int[] values = new int[count];
+        int found = 0;
+
+        for (int value = 1; found < count; value++) {
+
+            if ((IntHashSet.hash(value) & (CAPACITY - 1)) == slot) {
+                values[found++] = value;
+            }
+        }
+
+        return values;
+    }
+}